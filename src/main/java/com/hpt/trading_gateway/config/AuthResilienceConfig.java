@@ -0,0 +1,75 @@
+package com.hpt.trading_gateway.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.common.circuitbreaker.configuration.CircuitBreakerConfigCustomizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Circuit breaker and bulkhead guarding the /me token validation call made by AuthenticationFilter.
+ *
+ * These are separate from the route-level authServiceCircuitBreaker: every protected route
+ * depends on /me, so a slow auth service must be cut off quickly instead of piling up
+ * in-flight validations on the event loop. Only availability failures (connection errors,
+ * timeouts, 5xx) count towards opening the circuit; a rejected token is a normal outcome.
+ *
+ * Thresholds live in application.yml under resilience4j.circuitbreaker.instances and
+ * resilience4j.bulkhead.instances; both come from the shared registries so they are reported
+ * by actuator health, metrics and prometheus like the route circuit breakers.
+ */
+@Slf4j
+@Configuration
+public class AuthResilienceConfig {
+
+    public static final String CIRCUIT_BREAKER_NAME = "authValidationCircuitBreaker";
+    public static final String BULKHEAD_NAME = "authValidationBulkhead";
+
+    /**
+     * Failure classification can't be expressed in properties, so it is applied on top of them
+     */
+    @Bean
+    public CircuitBreakerConfigCustomizer authValidationCircuitBreakerCustomizer() {
+        return CircuitBreakerConfigCustomizer.of(CIRCUIT_BREAKER_NAME, builder -> builder
+            .recordException(AuthResilienceConfig::isAuthServiceFailure)
+            // Bulkhead rejections are load shedding, not a verdict on auth service health
+            .ignoreExceptions(BulkheadFullException.class));
+    }
+
+    @Bean
+    public CircuitBreaker authValidationCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER_NAME);
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+            log.warn("Auth validation circuit breaker transitioned: {}", event.getStateTransition()));
+        return circuitBreaker;
+    }
+
+    /**
+     * Caps concurrent /me calls; excess validations fail fast instead of queueing
+     */
+    @Bean
+    public Bulkhead authValidationBulkhead(BulkheadRegistry bulkheadRegistry) {
+        return bulkheadRegistry.bulkhead(BULKHEAD_NAME);
+    }
+
+    /**
+     * True when the auth service itself is unhealthy, as opposed to rejecting the token
+     */
+    public static boolean isAuthServiceFailure(Throwable error) {
+        if (error instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError();
+        }
+        return error instanceof WebClientRequestException
+            || error instanceof TimeoutException
+            || error instanceof IOException;
+    }
+}
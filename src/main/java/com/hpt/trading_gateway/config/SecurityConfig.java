@@ -100,14 +100,17 @@ public class SecurityConfig {
             "Content-Type",
             "Accept",
             "Origin",
-            "X-Requested-With"
+            "X-Requested-With",
+            "Idempotency-Key"
         ));
         
         // Expose headers that clients can access
         configuration.setExposedHeaders(Arrays.asList(
             "Authorization",
             "X-User-Id",
-            "X-User-Email"
+            "X-User-Email",
+            "Idempotent-Replayed",
+            "X-Gateway-Degraded"
         ));
         
         // Cache preflight response for 1 hour
@@ -2,12 +2,15 @@ package com.hpt.trading_gateway.controller;
 
 import com.hpt.trading_gateway.dto.ErrorResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferLimitException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
 
 /**
  * Fallback controller for circuit breaker
@@ -20,7 +23,10 @@ public class FallbackController {
 
     @PostMapping("/auth")
     @GetMapping("/auth")
-    public ResponseEntity<ErrorResponse> authServiceFallback() {
+    public ResponseEntity<ErrorResponse> authServiceFallback(ServerWebExchange exchange) {
+        if (isBodyLimitExceeded(exchange)) {
+            return payloadTooLarge();
+        }
         log.error("Auth service is currently unavailable");
         return ResponseEntity
             .status(HttpStatus.SERVICE_UNAVAILABLE)
@@ -29,11 +35,36 @@ public class FallbackController {
 
     @PostMapping("/service")
     @GetMapping("/service")
-    public ResponseEntity<ErrorResponse> serviceFallback() {
+    public ResponseEntity<ErrorResponse> serviceFallback(ServerWebExchange exchange) {
+        if (isBodyLimitExceeded(exchange)) {
+            return payloadTooLarge();
+        }
         log.error("Downstream service is currently unavailable");
         return ResponseEntity
             .status(HttpStatus.SERVICE_UNAVAILABLE)
             .body(new ErrorResponse("Service is temporarily unavailable. Please try again later."));
     }
-}
 
+    /**
+     * A request body cut off by BodySizeLimitFilter surfaces as a circuit breaker failure;
+     * report it as the client error it is rather than as an unavailable service.
+     * The cause chain is searched since codecs and handlers may wrap the original exception.
+     */
+    private boolean isBodyLimitExceeded(ServerWebExchange exchange) {
+        Throwable error = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        while (error != null) {
+            if (error instanceof DataBufferLimitException) {
+                return true;
+            }
+            error = error.getCause();
+        }
+        return false;
+    }
+
+    private ResponseEntity<ErrorResponse> payloadTooLarge() {
+        log.warn("Request body exceeded the configured size limit");
+        return ResponseEntity
+            .status(HttpStatus.PAYLOAD_TOO_LARGE)
+            .body(new ErrorResponse("Request body is too large"));
+    }
+}
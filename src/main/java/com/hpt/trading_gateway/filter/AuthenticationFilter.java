@@ -2,16 +2,28 @@ package com.hpt.trading_gateway.filter;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpt.trading_gateway.config.AuthResilienceConfig;
 import com.hpt.trading_gateway.dto.ApiResponse;
 import com.hpt.trading_gateway.dto.ErrorResponse;
 import com.hpt.trading_gateway.dto.UserData;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
@@ -20,6 +32,8 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 /**
  * Authentication filter that validates JWT tokens by calling the auth service /me endpoint.
  * This implements zero-trust security - the gateway doesn't trust tokens directly,
@@ -30,13 +44,30 @@ import reactor.core.publisher.Mono;
  * - Tokens are validated on every request (prevents old token abuse)
  * - User context is forwarded to downstream services via headers
  * - Comprehensive logging for security audit trail
+ *
+ * Degraded mode: the /me call has its own circuit breaker and bulkhead. While that circuit is
+ * open, routes configured with allowDegraded accept read-only requests carrying a token that
+ * was validated successfully within the grace period, tagged X-Gateway-Degraded: true.
+ * All other routes fail closed with 503.
  */
 @Slf4j
 @Component
 public class AuthenticationFilter extends AbstractGatewayFilterFactory<AuthenticationFilter.Config> {
 
+    /**
+     * Explicit order so authentication always runs before response-decorating route filters
+     * (compression, idempotency), which sit just ahead of NettyWriteResponseFilter.
+     */
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 10;
+
+    public static final String DEGRADED_HEADER = "X-Gateway-Degraded";
+
     private final WebClient.Builder webClientBuilder;
     private final ObjectMapper objectMapper;
+    private final CircuitBreaker authValidationCircuitBreaker;
+    private final Bulkhead authValidationBulkhead;
+    private final boolean degradedModeEnabled;
+    private final LastKnownGoodTokenStore lastKnownGoodTokens;
 
     @Value("${auth.service.url:http://localhost:8081}")
     private String authServiceUrl;
@@ -44,33 +75,64 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
     @Value("${gateway.security.secret}")
     private String gatewaySecret;
 
-    public AuthenticationFilter(WebClient.Builder webClientBuilder, ObjectMapper objectMapper) {
+    public AuthenticationFilter(WebClient.Builder webClientBuilder, ObjectMapper objectMapper,
+                                CircuitBreaker authValidationCircuitBreaker, Bulkhead authValidationBulkhead,
+                                @Value("${gateway.auth.degraded-mode.enabled:true}") boolean degradedModeEnabled,
+                                @Value("${gateway.auth.degraded-mode.grace-period:5m}") Duration degradedGracePeriod,
+                                @Value("${gateway.auth.degraded-mode.max-entries:10000}") int maxDegradedEntries) {
         super(Config.class);
         this.webClientBuilder = webClientBuilder;
         this.objectMapper = objectMapper;
+        this.authValidationCircuitBreaker = authValidationCircuitBreaker;
+        this.authValidationBulkhead = authValidationBulkhead;
+        this.degradedModeEnabled = degradedModeEnabled;
+        this.lastKnownGoodTokens = new LastKnownGoodTokenStore(maxDegradedEntries, degradedGracePeriod);
+    }
+
+    /**
+     * Outcome of token validation: a user (live or from the degraded-mode store) or the error
+     */
+    private record Validation(UserData user, boolean degraded, Throwable error) {
     }
 
     @Override
     public GatewayFilter apply(Config config) {
-        return (exchange, chain) -> {
+        return new OrderedGatewayFilter((exchange, chain) -> {
             ServerHttpRequest request = exchange.getRequest();
             
             // Log incoming request for security audit
-            log.info("Authentication check for: {} {}", request.getMethod(), request.getURI());
+            log.info("Authentication check for: {} {} from IP: {}", request.getMethod(), request.getURI(),
+                ClientIdentityFilter.getClientIp(exchange));
             
             // Extract Authorization header
             String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
             
             if (authHeader == null || !authHeader.startsWith("Bearer ")) {
                 log.warn("Missing or invalid Authorization header from IP: {}", 
-                    request.getRemoteAddress());
+                    ClientIdentityFilter.getClientIp(exchange));
                 return onError(exchange, "Authentication required. Please log in to continue", 
                     HttpStatus.UNAUTHORIZED);
             }
+
+            String tokenHash = degradedModeEnabled ? LastKnownGoodTokenStore.hash(authHeader) : null;
             
-            // Validate token with auth service
+            // Validate token with auth service; errors are turned into a Validation here so that
+            // failures further down the chain are never mistaken for authentication failures
             return validateToken(authHeader)
-                .flatMap(userData -> {
+                .map(userData -> {
+                    if (tokenHash != null) {
+                        lastKnownGoodTokens.put(tokenHash, userData, System.currentTimeMillis());
+                    }
+                    return new Validation(userData, false, null);
+                })
+                .onErrorResume(error -> Mono.just(fallbackValidation(config, request, tokenHash, error)))
+                .flatMap(validation -> {
+                    if (validation.user() == null) {
+                        return rejectValidation(exchange, validation.error());
+                    }
+
+                    UserData userData = validation.user();
+
                     // Token is valid, add user context headers for downstream services
                     ServerHttpRequest modifiedRequest = request.mutate()
                         .header("X-User-Id", userData.getId())
@@ -79,25 +141,82 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
                         .header("X-User-LastName", userData.getLastName())
                         .header("X-User-AccountType", userData.getAccountType() != null ? userData.getAccountType() : "STANDARD")
                         .header("X-Gateway-Validated", "true") // Proof that request went through gateway
+                        .headers(headers -> {
+                            // Never trust a client-supplied degraded marker
+                            headers.remove(DEGRADED_HEADER);
+                            if (validation.degraded()) {
+                                headers.set(DEGRADED_HEADER, "true");
+                            }
+                        })
                         .build();
 
-                    log.info("Authentication successful for user: {} ({}) with account type: {}",
+                    if (validation.degraded()) {
+                        exchange.getResponse().getHeaders().set(DEGRADED_HEADER, "true");
+                    }
+
+                    // Share the authenticated user with later filters (logging, audit, rate limiting)
+                    exchange.getAttributes().put(ClientIdentityFilter.CLIENT_USER_ATTR, userData);
+
+                    log.info("Authentication {} for user: {} ({}) with account type: {}",
+                        validation.degraded() ? "accepted in degraded mode" : "successful",
                         userData.getEmail(), userData.getId(), userData.getAccountType());
 
-                    return chain.filter(exchange.mutate().request(modifiedRequest).build());
-                })
-                .onErrorResume(error -> {
-                    log.error("Authentication failed: {}", error.getMessage());
-                    
-                    // Return user-friendly error message instead of technical details
-                    String userMessage = "Your session has expired. Please log in again";
-                    if (error.getMessage() != null && error.getMessage().contains("Invalid")) {
-                        userMessage = "Your session has expired. Please log in again";
+                    Mono<Void> result = chain.filter(exchange.mutate().request(modifiedRequest).build());
+                    if (config.isRevokesToken() && tokenHash != null) {
+                        // e.g. logout: the token must not be accepted in degraded mode afterwards
+                        result = result.doFinally(signal -> lastKnownGoodTokens.remove(tokenHash));
                     }
-                    
-                    return onError(exchange, userMessage, HttpStatus.UNAUTHORIZED);
+                    return result;
                 });
-        };
+        }, ORDER);
+    }
+
+    /**
+     * Decides what to do when live validation fails. While the /me circuit is open, routes
+     * that opt in accept a token validated within the grace period for safe (read-only)
+     * methods. Everything else stays fail-closed.
+     */
+    private Validation fallbackValidation(Config config, ServerHttpRequest request, String tokenHash,
+                                          Throwable error) {
+        if (tokenHash == null) {
+            return new Validation(null, false, error);
+        }
+        if (!AuthResilienceConfig.isAuthServiceFailure(error) && !(error instanceof CallNotPermittedException)
+                && !(error instanceof BulkheadFullException)) {
+            // The auth service rejected the token; forget any earlier successful validation
+            lastKnownGoodTokens.remove(tokenHash);
+            return new Validation(null, false, error);
+        }
+
+        boolean circuitOpen = error instanceof CallNotPermittedException;
+        boolean safeMethod = HttpMethod.GET.equals(request.getMethod()) || HttpMethod.HEAD.equals(request.getMethod());
+        if (circuitOpen && config.isAllowDegraded() && safeMethod) {
+            UserData cached = lastKnownGoodTokens.get(tokenHash, System.currentTimeMillis());
+            if (cached != null) {
+                log.warn("Auth validation circuit open, serving {} {} from last-known-good validation",
+                    request.getMethod(), request.getURI().getPath());
+                return new Validation(cached, true, null);
+            }
+        }
+        return new Validation(null, false, error);
+    }
+
+    /**
+     * Rejected tokens get 401; an unavailable auth service gets 503 so clients do not drop
+     * a session that may still be valid
+     */
+    private Mono<Void> rejectValidation(ServerWebExchange exchange, Throwable error) {
+        if (AuthResilienceConfig.isAuthServiceFailure(error) || error instanceof CallNotPermittedException
+                || error instanceof BulkheadFullException) {
+            log.error("Authentication unavailable: {}", error.getMessage());
+            return onError(exchange, "Authentication service is temporarily unavailable. Please try again later.",
+                HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        log.error("Authentication failed: {}", error.getMessage());
+
+        // Return user-friendly error message instead of technical details
+        return onError(exchange, "Your session has expired. Please log in again", HttpStatus.UNAUTHORIZED);
     }
 
     /**
@@ -106,6 +225,8 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
      * 1. Token signature is valid
      * 2. Token is not expired
      * 3. Token is not blacklisted (logout)
+     *
+     * The call runs through its own bulkhead and circuit breaker (see AuthResilienceConfig).
      */
     private Mono<UserData> validateToken(String authHeader) {
         log.debug("Validating token with auth service: {}", authServiceUrl);
@@ -117,13 +238,21 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
             .header("X-Gateway-Signature", gatewaySecret)  // Add gateway signature for internal service validation
             .retrieve()
             .onStatus(
-                status -> status.is4xxClientError() || status.is5xxServerError(),
+                HttpStatusCode::is4xxClientError,
                 response -> {
                     log.warn("Auth service returned error status: {}", response.statusCode());
                     // Return user-friendly message for token validation failure
                     return Mono.error(new RuntimeException("Token validation failed"));
                 }
             )
+            .onStatus(
+                HttpStatusCode::is5xxServerError,
+                response -> {
+                    log.warn("Auth service returned error status: {}", response.statusCode());
+                    // Keep the 5xx exception type so the circuit breaker records it
+                    return response.createException();
+                }
+            )
             .bodyToMono(new ParameterizedTypeReference<ApiResponse<UserData>>() {})
             .map(response -> {
                 if (response.isSuccess() && response.getData() != null) {
@@ -131,6 +260,9 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
                 }
                 throw new RuntimeException("Invalid response from auth service");
             })
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("Invalid response from auth service")))
+            .transformDeferred(BulkheadOperator.of(authValidationBulkhead))
+            .transformDeferred(CircuitBreakerOperator.of(authValidationCircuitBreaker))
             .doOnError(error -> log.error("Token validation error: {}", error.getMessage()));
     }
 
@@ -153,8 +285,15 @@ public class AuthenticationFilter extends AbstractGatewayFilterFactory<Authentic
         }
     }
 
+    /**
+     * allowDegraded: accept last-known-good validations for GET/HEAD while the /me circuit is
+     * open (read-only routes only). revokesToken: the route invalidates the token (logout),
+     * so drop it from the degraded-mode store.
+     */
+    @Data
     public static class Config {
-        // Configuration properties can be added here if needed
+        private boolean allowDegraded;
+        private boolean revokesToken;
     }
 }
 
@@ -0,0 +1,212 @@
+package com.hpt.trading_gateway.filter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpt.trading_gateway.dto.ErrorResponse;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request and response body size limits, enforced while the body streams through.
+ *
+ * Bytes are counted per DataBuffer as they pass; the body is never aggregated, so a huge
+ * upload or a runaway backend response costs at most one buffer of heap at a time.
+ * - Requests whose Content-Length exceeds the limit are rejected with 413 before proxying
+ * - Chunked requests are cut off once the limit is crossed; the client gets 413
+ * - Responses whose Content-Length exceeds the limit are replaced with 502 before anything
+ *   is committed; chunked responses that cross the limit are aborted mid-flight so the client
+ *   sees a truncated transfer rather than a silently short body
+ *
+ * Streaming (SSE) responses are not limited. Limits can be overridden per route.
+ */
+@Slf4j
+@Component
+public class BodySizeLimitFilter extends AbstractGatewayFilterFactory<BodySizeLimitFilter.Config> {
+
+    /**
+     * Sits closest to NettyWriteResponseFilter so it counts the backend's uncompressed bytes
+     * and IdempotencyFilter never stores a cut-off response.
+     */
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+
+    private final ObjectMapper objectMapper;
+    private final DataSize defaultMaxRequestSize;
+    private final DataSize defaultMaxResponseSize;
+
+    public BodySizeLimitFilter(ObjectMapper objectMapper,
+                               @Value("${gateway.body-limit.max-request-size:10MB}") DataSize defaultMaxRequestSize,
+                               @Value("${gateway.body-limit.max-response-size:50MB}") DataSize defaultMaxResponseSize) {
+        super(Config.class);
+        this.objectMapper = objectMapper;
+        this.defaultMaxRequestSize = defaultMaxRequestSize;
+        this.defaultMaxResponseSize = defaultMaxResponseSize;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long maxRequestBytes = (config.getMaxRequestSize() != null
+            ? config.getMaxRequestSize() : defaultMaxRequestSize).toBytes();
+        long maxResponseBytes = (config.getMaxResponseSize() != null
+            ? config.getMaxResponseSize() : defaultMaxResponseSize).toBytes();
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            ServerHttpRequest request = exchange.getRequest();
+
+            long contentLength = request.getHeaders().getContentLength();
+            if (contentLength > maxRequestBytes) {
+                log.warn("Rejected request body of {} bytes (limit {}) for {} {} from IP: {}",
+                    contentLength, maxRequestBytes, request.getMethod(), request.getURI().getPath(),
+                    ClientIdentityFilter.getClientIp(exchange));
+                return onError(exchange, "Request body is too large", HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+
+            LimitedRequest limitedRequest = new LimitedRequest(request, maxRequestBytes);
+            LimitedResponse limitedResponse = new LimitedResponse(exchange, maxResponseBytes);
+
+            return chain.filter(exchange.mutate().request(limitedRequest).response(limitedResponse).build())
+                .onErrorResume(DataBufferLimitException.class, error -> {
+                    if (exchange.getResponse().isCommitted()) {
+                        // Headers are already out; propagate so the connection is aborted
+                        return Mono.error(error);
+                    }
+                    if (limitedResponse.exceeded) {
+                        removeEntityHeaders(exchange.getResponse().getHeaders());
+                        return onError(exchange, "Upstream response is too large", HttpStatus.BAD_GATEWAY);
+                    }
+                    log.warn("Request body exceeded {} bytes mid-stream for {} {} from IP: {}",
+                        maxRequestBytes, request.getMethod(), request.getURI().getPath(),
+                        ClientIdentityFilter.getClientIp(exchange));
+                    return onError(exchange, "Request body is too large", HttpStatus.PAYLOAD_TOO_LARGE);
+                });
+        }, ORDER);
+    }
+
+    /**
+     * Passes buffers through one at a time, failing with DataBufferLimitException as soon as
+     * the running total crosses maxBytes. The buffer that crosses the limit is released.
+     */
+    static Flux<DataBuffer> limit(Publisher<? extends DataBuffer> body, long maxBytes, Runnable onExceeded) {
+        return Flux.defer(() -> {
+            long[] total = {0};
+            return Flux.<DataBuffer>from(body).<DataBuffer>handle((buffer, sink) -> {
+                total[0] += buffer.readableByteCount();
+                if (total[0] > maxBytes) {
+                    DataBufferUtils.release(buffer);
+                    onExceeded.run();
+                    sink.error(new DataBufferLimitException("Body exceeded limit of " + maxBytes + " bytes"));
+                } else {
+                    sink.next(buffer);
+                }
+            });
+        });
+    }
+
+    private static class LimitedRequest extends ServerHttpRequestDecorator {
+
+        private final long maxBytes;
+
+        LimitedRequest(ServerHttpRequest delegate, long maxBytes) {
+            super(delegate);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return limit(super.getBody(), maxBytes, () -> { });
+        }
+    }
+
+    private class LimitedResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final long maxBytes;
+        private volatile boolean exceeded;
+
+        LimitedResponse(ServerWebExchange exchange, long maxBytes) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            long contentLength = getHeaders().getContentLength();
+            if (contentLength > maxBytes) {
+                exceeded = true;
+                log.warn("Upstream response of {} bytes exceeds limit {} for {}",
+                    contentLength, maxBytes, exchange.getRequest().getURI().getPath());
+                // Cancel the upstream body without reading it, then answer 502 instead
+                removeEntityHeaders(getHeaders());
+                return Flux.from(body).take(0)
+                    .then(onError(exchange, "Upstream response is too large", HttpStatus.BAD_GATEWAY));
+            }
+            return super.writeWith(limit(body, maxBytes, () -> {
+                exceeded = true;
+                log.warn("Upstream response exceeded {} bytes mid-stream for {}, aborting",
+                    maxBytes, exchange.getRequest().getURI().getPath());
+            }));
+        }
+    }
+
+    /**
+     * Drops the headers describing the upstream body that is being replaced. CORS, security
+     * and gateway headers (e.g. X-Gateway-Degraded) set by earlier filters are kept.
+     */
+    private static void removeEntityHeaders(HttpHeaders headers) {
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        headers.remove(HttpHeaders.ETAG);
+    }
+
+    /**
+     * Returns an error response to the client
+     */
+    private Mono<Void> onError(ServerWebExchange exchange, String message, HttpStatus status) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        response.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+
+        ErrorResponse errorResponse = new ErrorResponse(message);
+
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(errorResponse);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing error response", e);
+            return response.setComplete();
+        }
+    }
+
+    /**
+     * Per-route overrides. Unset values fall back to the gateway.body-limit.* defaults.
+     */
+    @Data
+    public static class Config {
+        private DataSize maxRequestSize;
+        private DataSize maxResponseSize;
+    }
+}
@@ -0,0 +1,303 @@
+package com.hpt.trading_gateway.filter;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+
+/**
+ * Binary prefix tree of CIDR blocks used for trusted-proxy lookups.
+ *
+ * IPv4 and IPv6 live in separate trees; IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) are looked
+ * up in the IPv4 tree. Lookups walk at most 32/128 nodes and parse address literals by index
+ * scanning, so checking a hop from a forwarding header allocates nothing.
+ */
+final class CidrTrie {
+
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    private static final class Node {
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+    }
+
+    /**
+     * Adds a CIDR block such as 10.0.0.0/8 or fc00::/7. A bare address is a single-host block.
+     */
+    void add(String cidr) {
+        String value = cidr.trim();
+        int slash = value.indexOf('/');
+        String address = slash >= 0 ? value.substring(0, slash) : value;
+        boolean ipv4 = address.indexOf(':') < 0;
+        int maxBits = ipv4 ? 32 : 128;
+        int prefix = slash >= 0 ? Integer.parseInt(value.substring(slash + 1).trim()) : maxBits;
+        if (prefix < 0 || prefix > maxBits) {
+            throw new IllegalArgumentException("Invalid CIDR prefix length: " + cidr);
+        }
+
+        Node node;
+        long hi;
+        long lo;
+        if (ipv4) {
+            long bits = parseIpv4(address, 0, address.length());
+            if (bits < 0) {
+                throw new IllegalArgumentException("Invalid IPv4 CIDR: " + cidr);
+            }
+            node = ipv4Root;
+            hi = bits << 32;
+            lo = 0;
+        } else {
+            long[] bits = parseIpv6Strict(address);
+            if (bits == null) {
+                throw new IllegalArgumentException("Invalid IPv6 CIDR: " + cidr);
+            }
+            node = ipv6Root;
+            hi = bits[0];
+            lo = bits[1];
+        }
+
+        for (int i = 0; i < prefix; i++) {
+            if (node.terminal) {
+                return; // already covered by a shorter prefix
+            }
+            if (bit(hi, lo, i)) {
+                if (node.one == null) {
+                    node.one = new Node();
+                }
+                node = node.one;
+            } else {
+                if (node.zero == null) {
+                    node.zero = new Node();
+                }
+                node = node.zero;
+            }
+        }
+        node.terminal = true;
+        node.zero = null;
+        node.one = null;
+    }
+
+    boolean contains(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            long bits = 0;
+            for (byte b : bytes) {
+                bits = (bits << 8) | (b & 0xFF);
+            }
+            return containsIpv4(bits);
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (bytes[i] & 0xFF);
+            lo = (lo << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return containsIpv6(hi, lo);
+    }
+
+    /**
+     * Looks up the address literal in s[start, end). Unparseable input is never trusted.
+     */
+    boolean contains(String s, int start, int end) {
+        if (s.indexOf(':', start) < 0 || s.indexOf(':', start) >= end) {
+            long bits = parseIpv4(s, start, end);
+            return bits >= 0 && containsIpv4(bits);
+        }
+        return containsIpv6Literal(s, start, end);
+    }
+
+    private boolean containsIpv4(long bits) {
+        return walk(ipv4Root, bits << 32, 0, 32);
+    }
+
+    private boolean containsIpv6(long hi, long lo) {
+        if (hi == 0 && (lo >>> 32) == 0xFFFFL) {
+            return containsIpv4(lo & 0xFFFFFFFFL);
+        }
+        return walk(ipv6Root, hi, lo, 128);
+    }
+
+    private static boolean walk(Node root, long hi, long lo, int maxBits) {
+        Node node = root;
+        for (int i = 0; i < maxBits; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            node = bit(hi, lo, i) ? node.one : node.zero;
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    private static boolean bit(long hi, long lo, int index) {
+        return index < 64
+            ? ((hi >>> (63 - index)) & 1L) != 0
+            : ((lo >>> (127 - index)) & 1L) != 0;
+    }
+
+    /**
+     * Parses a dotted-quad in s[start, end) to an unsigned 32-bit value, or -1 if invalid.
+     */
+    static long parseIpv4(String s, int start, int end) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else if (c == '.') {
+                if (value < 0 || octets == 3) {
+                    return -1;
+                }
+                result = (result << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (value < 0 || octets != 3) {
+            return -1;
+        }
+        return (result << 8) | value;
+    }
+
+    /**
+     * Parses an IPv6 literal in s[start, end) and looks it up without materialising the bytes.
+     * Handles "::" compression, an embedded trailing IPv4 part and a %zone suffix.
+     */
+    private boolean containsIpv6Literal(String s, int start, int end) {
+        int zone = s.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+
+        // Groups before "::" accumulate into head, groups after it into tail
+        long headHi = 0, headLo = 0, tailHi = 0, tailLo = 0;
+        int headGroups = 0, tailGroups = 0;
+        boolean compressed = false;
+        int i = start;
+        if (end - start >= 2 && s.charAt(start) == ':' && s.charAt(start + 1) == ':') {
+            compressed = true;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupEnd = i;
+            while (groupEnd < end && s.charAt(groupEnd) != ':') {
+                groupEnd++;
+            }
+
+            int groupCount;
+            long groupBits;
+            if (s.indexOf('.', i) >= 0 && s.indexOf('.', i) < groupEnd) {
+                if (groupEnd != end) {
+                    return false;
+                }
+                groupBits = parseIpv4(s, i, groupEnd);
+                if (groupBits < 0) {
+                    return false;
+                }
+                groupCount = 2;
+            } else {
+                groupBits = parseHexGroup(s, i, groupEnd);
+                if (groupBits < 0) {
+                    return false;
+                }
+                groupCount = 1;
+            }
+
+            int shift = 16 * groupCount;
+            if (compressed) {
+                tailHi = (tailHi << shift) | (tailLo >>> (64 - shift));
+                tailLo = (tailLo << shift) | groupBits;
+                tailGroups += groupCount;
+            } else {
+                headHi = (headHi << shift) | (headLo >>> (64 - shift));
+                headLo = (headLo << shift) | groupBits;
+                headGroups += groupCount;
+            }
+
+            if (groupEnd == end) {
+                break;
+            }
+            i = groupEnd + 1;
+            if (i < end && s.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+
+        int total = headGroups + tailGroups;
+        if (total > 8 || (!compressed && total != 8) || (compressed && total == 8)) {
+            return false;
+        }
+
+        // Shift head into the top bits, leaving zero groups for the "::" gap
+        int n = 16 * (8 - headGroups);
+        long hi;
+        long lo;
+        if (n == 0) {
+            hi = headHi;
+            lo = headLo;
+        } else if (n >= 128) {
+            hi = 0;
+            lo = 0;
+        } else if (n >= 64) {
+            hi = headLo << (n - 64);
+            lo = 0;
+        } else {
+            hi = (headHi << n) | (headLo >>> (64 - n));
+            lo = headLo << n;
+        }
+        return containsIpv6(hi | tailHi, lo | tailLo);
+    }
+
+    private static long parseHexGroup(String s, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > 4) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Configuration-time IPv6 parsing; only runs while the trie is being built.
+     */
+    private static long[] parseIpv6Strict(String address) {
+        try {
+            byte[] bytes = InetAddress.getByName(address).getAddress();
+            if (bytes.length != 16) {
+                return null;
+            }
+            long hi = 0;
+            long lo = 0;
+            for (int i = 0; i < 8; i++) {
+                hi = (hi << 8) | (bytes[i] & 0xFF);
+                lo = (lo << 8) | (bytes[i + 8] & 0xFF);
+            }
+            return new long[] {hi, lo};
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
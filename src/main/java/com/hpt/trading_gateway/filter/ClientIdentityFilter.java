@@ -0,0 +1,253 @@
+package com.hpt.trading_gateway.filter;
+
+import com.hpt.trading_gateway.dto.UserData;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Global filter that resolves the client identity once per request and stores it in exchange
+ * attributes, so logging, rate limiting and audit code never re-parse forwarding headers.
+ *
+ * Forwarding headers are only honoured when the TCP peer is a trusted proxy (configured as a
+ * CIDR list and matched through a prefix tree). Hops are then walked right-to-left, skipping
+ * trusted proxies, and the first untrusted hop is the client. This stops a caller from
+ * spoofing its IP by sending its own X-Forwarded-For header.
+ *
+ * Header precedence: X-Forwarded-For, then Forwarded (RFC 7239), then X-Real-IP.
+ * All parsing is done by index scanning; only the resolved IP string is allocated.
+ *
+ * The authenticated user is added later by AuthenticationFilter under CLIENT_USER_ATTR.
+ */
+@Slf4j
+@Component
+public class ClientIdentityFilter implements GlobalFilter, Ordered {
+
+    public static final String CLIENT_IP_ATTR = ClientIdentityFilter.class.getName() + ".clientIp";
+    public static final String CLIENT_USER_ATTR = ClientIdentityFilter.class.getName() + ".user";
+
+    private static final String UNKNOWN = "unknown";
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    private static final String X_REAL_IP = "X-Real-IP";
+    private static final String FORWARDED = "Forwarded";
+
+    private final CidrTrie trustedProxies = new CidrTrie();
+
+    public ClientIdentityFilter(
+            @Value("${gateway.client-identity.trusted-proxies:127.0.0.0/8,::1/128}") List<String> trustedProxyCidrs) {
+        for (String cidr : trustedProxyCidrs) {
+            if (!cidr.isBlank()) {
+                trustedProxies.add(cidr);
+            }
+        }
+        log.info("Client identity resolution trusts {} proxy range(s)", trustedProxyCidrs.size());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        exchange.getAttributes().put(CLIENT_IP_ATTR, resolveClientIp(exchange.getRequest()));
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Returns the client IP resolved for this exchange, or "unknown" if it could not be determined.
+     */
+    public static String getClientIp(ServerWebExchange exchange) {
+        return exchange.getAttributeOrDefault(CLIENT_IP_ATTR, UNKNOWN);
+    }
+
+    /**
+     * Returns the authenticated user for this exchange, or null for anonymous requests.
+     */
+    public static UserData getUser(ServerWebExchange exchange) {
+        return exchange.getAttribute(CLIENT_USER_ATTR);
+    }
+
+    String resolveClientIp(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return UNKNOWN;
+        }
+        String peer = remoteAddress.getAddress().getHostAddress();
+
+        // Headers from an untrusted peer are attacker-controlled, ignore them
+        if (!trustedProxies.contains(remoteAddress.getAddress())) {
+            return peer;
+        }
+
+        HttpHeaders headers = request.getHeaders();
+        String fromXff = fromForwardedFor(headers.get(X_FORWARDED_FOR));
+        if (fromXff != null) {
+            return fromXff;
+        }
+        String fromForwarded = fromForwarded(headers.get(FORWARDED));
+        if (fromForwarded != null) {
+            return fromForwarded;
+        }
+        String xRealIp = headers.getFirst(X_REAL_IP);
+        if (xRealIp != null) {
+            int start = skipWhitespace(xRealIp, 0, xRealIp.length());
+            int end = trimWhitespace(xRealIp, start, xRealIp.length());
+            if (start < end) {
+                return xRealIp.substring(start, end);
+            }
+        }
+        return peer;
+    }
+
+    /**
+     * Walks X-Forwarded-For hops right-to-left across all header lines and returns the first
+     * untrusted hop, or the left-most hop if every hop is a trusted proxy.
+     */
+    private String fromForwardedFor(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        String leftmost = null;
+        int leftmostStart = 0;
+        int leftmostEnd = 0;
+        for (int v = values.size() - 1; v >= 0; v--) {
+            String value = values.get(v);
+            int end = value.length();
+            while (end > 0) {
+                int comma = value.lastIndexOf(',', end - 1);
+                int start = skipWhitespace(value, comma + 1, end);
+                int hopEnd = trimWhitespace(value, start, end);
+                if (start < hopEnd) {
+                    if (!isTrustedHop(value, start, hopEnd)) {
+                        return hop(value, start, hopEnd);
+                    }
+                    leftmost = value;
+                    leftmostStart = start;
+                    leftmostEnd = hopEnd;
+                }
+                end = comma < 0 ? 0 : comma;
+            }
+        }
+        return leftmost != null ? hop(leftmost, leftmostStart, leftmostEnd) : null;
+    }
+
+    /**
+     * Same walk as X-Forwarded-For over the for= parameter of each Forwarded element.
+     */
+    private String fromForwarded(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        String leftmost = null;
+        int leftmostStart = 0;
+        int leftmostEnd = 0;
+        for (int v = values.size() - 1; v >= 0; v--) {
+            String value = values.get(v);
+            int end = value.length();
+            while (end > 0) {
+                int comma = value.lastIndexOf(',', end - 1);
+                int forStart = findForParameter(value, comma + 1, end);
+                if (forStart >= 0) {
+                    int paramEnd = value.indexOf(';', forStart);
+                    if (paramEnd < 0 || paramEnd > end) {
+                        paramEnd = end;
+                    }
+                    int hopEnd = trimWhitespace(value, forStart, paramEnd);
+                    if (forStart < hopEnd) {
+                        if (!isTrustedHop(value, forStart, hopEnd)) {
+                            return hop(value, forStart, hopEnd);
+                        }
+                        leftmost = value;
+                        leftmostStart = forStart;
+                        leftmostEnd = hopEnd;
+                    }
+                }
+                end = comma < 0 ? 0 : comma;
+            }
+        }
+        return leftmost != null ? hop(leftmost, leftmostStart, leftmostEnd) : null;
+    }
+
+    /**
+     * Returns the index just after "for=" in value[start, end), or -1 if absent.
+     */
+    private static int findForParameter(String value, int start, int end) {
+        int i = start;
+        while (i < end) {
+            i = skipWhitespace(value, i, end);
+            if (i + 4 <= end && value.regionMatches(true, i, "for=", 0, 4)) {
+                return skipWhitespace(value, i + 4, end);
+            }
+            int semicolon = value.indexOf(';', i);
+            if (semicolon < 0 || semicolon >= end) {
+                return -1;
+            }
+            i = semicolon + 1;
+        }
+        return -1;
+    }
+
+    private boolean isTrustedHop(String value, int start, int end) {
+        long bounds = addressBounds(value, start, end);
+        return trustedProxies.contains(value, (int) (bounds >>> 32), (int) bounds);
+    }
+
+    private static String hop(String value, int start, int end) {
+        long bounds = addressBounds(value, start, end);
+        return value.substring((int) (bounds >>> 32), (int) bounds);
+    }
+
+    /**
+     * Narrows a hop to its bare address: strips quotes, [brackets] and an IPv4 :port.
+     * Returns start in the high and end in the low 32 bits to avoid allocating a pair.
+     */
+    private static long addressBounds(String value, int start, int end) {
+        if (end - start >= 2 && value.charAt(start) == '"' && value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        if (start < end && value.charAt(start) == '[') {
+            int close = value.indexOf(']', start);
+            if (close > start && close < end) {
+                return ((long) (start + 1) << 32) | close;
+            }
+        } else {
+            int colon = value.indexOf(':', start);
+            if (colon >= 0 && colon < end) {
+                int nextColon = value.indexOf(':', colon + 1);
+                if (nextColon < 0 || nextColon >= end) {
+                    end = colon; // a.b.c.d:port
+                }
+            }
+        }
+        return ((long) start << 32) | end;
+    }
+
+    private static int skipWhitespace(String value, int start, int end) {
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(String value, int start, int end) {
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Run first so every later filter, including request logging, sees the resolved identity
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,425 @@
+package com.hpt.trading_gateway.filter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpt.trading_gateway.dto.ErrorResponse;
+import com.hpt.trading_gateway.dto.UserData;
+import com.hpt.trading_gateway.filter.IdempotencyStore.Entry;
+import com.hpt.trading_gateway.filter.IdempotencyStore.Lookup;
+import com.hpt.trading_gateway.filter.IdempotencyStore.StoredResponse;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.filter.factory.SpringCloudCircuitBreakerFilterFactory.CircuitBreakerStatusCodeException;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Set;
+
+/**
+ * Idempotency filter for expensive POST routes (backtests, crawls).
+ *
+ * Clients retry these calls after gateway timeouts, and every retry used to start another
+ * backtest or crawl exactly when the backends were slowest. With an Idempotency-Key header:
+ * - The first request for a key is proxied and its response is captured
+ * - Concurrent duplicates attach to the in-flight request and receive the same response
+ * - Later duplicates within the TTL get the stored response replayed without hitting the backend
+ *
+ * Keys are scoped per authenticated user (the X-User-Id identity), so one caller can never
+ * replay another caller's response. Requests without an authenticated user are proxied without
+ * deduplication: behind NAT or a published Docker port many callers share one IP, so an IP
+ * scope would leak responses between them. Routes using this filter must therefore also use
+ * AuthenticationFilter. A SHA-256 fingerprint
+ * of the request body is kept with each key; reusing a key with a different body gets 422.
+ *
+ * 5xx, transient 4xx (408, 425, 429) and bodies over the size limit are not stored, so a
+ * failed attempt can be retried. The exception is a gateway-side timeout, fallback or client
+ * disconnect while the backend was being called: the backend may still be running the job,
+ * so the key stays taken for the TTL and duplicates get 409 instead of starting it again.
+ * Replayed responses carry Idempotent-Replayed: true.
+ */
+@Slf4j
+@Component
+public class IdempotencyFilter extends AbstractGatewayFilterFactory<IdempotencyFilter.Config> {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    /**
+     * Runs inside ResponseCompressionFilter so stored bodies are the uncompressed originals and
+     * replays are encoded for whichever client asks; runs after Authentication/VIP filters so a
+     * replay is never served to an unauthenticated caller; runs outside BodySizeLimitFilter so
+     * a cut-off response is never stored.
+     */
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 2;
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    // Client errors that say "try again later" rather than describing the request
+    private static final Set<Integer> TRANSIENT_CLIENT_ERRORS = Set.of(
+        HttpStatus.REQUEST_TIMEOUT.value(),
+        HttpStatus.TOO_EARLY.value(),
+        HttpStatus.TOO_MANY_REQUESTS.value()
+    );
+
+    // Hop-by-hop or recomputed headers that must not be replayed verbatim
+    private static final Set<String> EXCLUDED_HEADERS = Set.of(
+        HttpHeaders.CONTENT_LENGTH.toLowerCase(),
+        HttpHeaders.TRANSFER_ENCODING.toLowerCase(),
+        HttpHeaders.CONNECTION.toLowerCase(),
+        "keep-alive"
+    );
+
+    private final ObjectMapper objectMapper;
+    private final IdempotencyStore store;
+
+    @Value("${gateway.idempotency.ttl:10m}")
+    private Duration defaultTtl;
+
+    @Value("${gateway.idempotency.max-body-size:1048576}")
+    private int defaultMaxBodySize;
+
+    public IdempotencyFilter(ObjectMapper objectMapper,
+                             @Value("${gateway.idempotency.max-entries:10000}") int maxEntries,
+                             @Value("${gateway.idempotency.max-bytes:67108864}") long maxBytes) {
+        super(Config.class);
+        this.objectMapper = objectMapper;
+        this.store = new IdempotencyStore(maxEntries, maxBytes);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Duration ttl = config.getTtl() != null ? config.getTtl() : defaultTtl;
+        int maxBodySize = config.getMaxBodySize() != null ? config.getMaxBodySize() : defaultMaxBodySize;
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (!HttpMethod.POST.equals(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+
+            String idempotencyKey = exchange.getRequest().getHeaders().getFirst(IDEMPOTENCY_KEY_HEADER);
+            if (idempotencyKey == null) {
+                return chain.filter(exchange);
+            }
+            if (!isValidKey(idempotencyKey)) {
+                return onError(exchange, "Invalid Idempotency-Key header", HttpStatus.BAD_REQUEST);
+            }
+
+            UserData user = ClientIdentityFilter.getUser(exchange);
+            if (user == null || user.getId() == null) {
+                log.debug("No authenticated user, proxying {} without idempotency",
+                    exchange.getRequest().getURI().getPath());
+                return chain.filter(exchange);
+            }
+
+            String storeKey = "user:" + user.getId() + '\n' + exchange.getRequest().getURI().getPath()
+                + '\n' + idempotencyKey;
+            return handle(exchange, chain, storeKey, ttl, maxBodySize);
+        }, ORDER);
+    }
+
+    private Mono<Void> handle(ServerWebExchange exchange, GatewayFilterChain chain, String storeKey,
+                              Duration ttl, int maxBodySize) {
+        Lookup lookup = store.acquire(storeKey, System.currentTimeMillis());
+        if (lookup == null) {
+            log.warn("Idempotency store full of in-flight requests, proxying without deduplication");
+            return chain.filter(exchange);
+        }
+
+        if (!lookup.owner()) {
+            StoredResponse completed = lookup.completed();
+            if (completed != null || lookup.unresolved()) {
+                return respondToDuplicate(exchange, lookup.entry(), completed);
+            }
+            log.info("Attaching duplicate request to in-flight idempotency key on {}",
+                exchange.getRequest().getURI().getPath());
+            // If the owner ends without a storable response, retry as a new owner. The duplicate's
+            // body is only read once it is answered, so it can still be proxied here.
+            return lookup.entry().result().then(Mono.defer(() -> {
+                StoredResponse response = lookup.completed();
+                return response != null
+                    ? respondToDuplicate(exchange, lookup.entry(), response)
+                    : handle(exchange, chain, storeKey, ttl, maxBodySize);
+            }));
+        }
+
+        FingerprintingRequest fingerprinting = new FingerprintingRequest(exchange.getRequest());
+        CapturingResponse capturing = new CapturingResponse(exchange.getResponse(), maxBodySize);
+        return chain.filter(exchange.mutate().request(fingerprinting).response(capturing).build())
+            .doFinally(signal -> {
+                long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+                String fingerprint = fingerprinting.fingerprint;
+                StoredResponse response = signal == SignalType.ON_COMPLETE ? capturing.toStoredResponse() : null;
+                if (response != null && fingerprint != null) {
+                    store.complete(storeKey, lookup.entry(), response, fingerprint, expiresAt);
+                } else if (isOutcomeUnknown(exchange, signal)) {
+                    log.warn("Outcome of idempotent request on {} is unknown ({}), holding key for {}",
+                        exchange.getRequest().getURI().getPath(), signal, ttl);
+                    store.markUnresolved(storeKey, lookup.entry(), fingerprint, expiresAt);
+                } else {
+                    store.abandon(storeKey, lookup.entry());
+                }
+            });
+    }
+
+    /**
+     * Answers a duplicate from a settled entry: 422 if its body differs from the original,
+     * otherwise the stored response, or 409 while the original's outcome is unresolved.
+     */
+    private Mono<Void> respondToDuplicate(ServerWebExchange exchange, Entry entry, StoredResponse stored) {
+        String path = exchange.getRequest().getURI().getPath();
+        return fingerprint(exchange.getRequest().getBody()).flatMap(fingerprint -> {
+            String original = entry.fingerprint();
+            if (original != null && !original.equals(fingerprint)) {
+                log.warn("Idempotency key reused with a different request body on {}", path);
+                return onError(exchange, "Idempotency-Key was already used with a different request body",
+                    HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+            if (stored == null) {
+                log.info("Rejecting duplicate of unresolved idempotent request on {}", path);
+                return onError(exchange, "A request with this Idempotency-Key is still being processed",
+                    HttpStatus.CONFLICT);
+            }
+            log.info("Replaying stored response for idempotency key on {}", path);
+            return replay(exchange, stored);
+        });
+    }
+
+    /**
+     * True when the backend may have received the request but the owner never saw its real
+     * answer: the client went away or the exchange failed mid-proxy, or the circuit breaker
+     * served its fallback after a timeout or connection error. An open circuit never reached
+     * the backend, a backend 5xx status is a real answer, and a request body cut off by
+     * BodySizeLimitFilter was answered 413 by the gateway, so those can be retried.
+     */
+    private static boolean isOutcomeUnknown(ServerWebExchange exchange, SignalType signal) {
+        if (signal != SignalType.ON_COMPLETE) {
+            return true;
+        }
+        Throwable error = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        return error != null
+            && !(error instanceof CallNotPermittedException)
+            && !(error instanceof CircuitBreakerStatusCodeException)
+            && !isBodyLimitExceeded(error);
+    }
+
+    private static boolean isBodyLimitExceeded(Throwable error) {
+        while (error != null) {
+            if (error instanceof DataBufferLimitException) {
+                return true;
+            }
+            error = error.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * SHA-256 of a request body, read and released buffer by buffer
+     */
+    private static Mono<String> fingerprint(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            MessageDigest digest = newDigest();
+            return body
+                .doOnNext(buffer -> {
+                    try {
+                        update(digest, buffer);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .then(Mono.fromSupplier(() -> HexFormat.of().formatHex(digest.digest())));
+        });
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            iterator.forEachRemaining(digest::update);
+        }
+    }
+
+    private static boolean isValidKey(String key) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 0x21 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Mono<Void> replay(ServerWebExchange exchange, StoredResponse stored) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(stored.status());
+        HttpHeaders headers = response.getHeaders();
+        stored.headers().forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        headers.setContentLength(stored.body().length);
+        headers.set(REPLAYED_HEADER, "true");
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(stored.body())));
+    }
+
+    /**
+     * Returns an error response to the client
+     */
+    private Mono<Void> onError(ServerWebExchange exchange, String message, HttpStatus status) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+        ErrorResponse errorResponse = new ErrorResponse(message);
+
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(errorResponse);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing error response", e);
+            return response.setComplete();
+        }
+    }
+
+    /**
+     * Passes the request body through unchanged while hashing it. The fingerprint is only set
+     * once the whole body has been read; it stays null if the body was cut short.
+     */
+    private static class FingerprintingRequest extends ServerHttpRequestDecorator {
+
+        private volatile String fingerprint;
+
+        FingerprintingRequest(ServerHttpRequest delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return Flux.defer(() -> {
+                MessageDigest digest = newDigest();
+                return super.getBody()
+                    .doOnNext(buffer -> update(digest, buffer))
+                    .doOnComplete(() -> fingerprint = HexFormat.of().formatHex(digest.digest()));
+            });
+        }
+    }
+
+    /**
+     * Passes the response through unchanged while copying status, headers and up to
+     * maxBodySize bytes of body for later replay.
+     */
+    private static class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final int maxBodySize;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private HttpHeaders headers;
+        private boolean storable = true;
+
+        CapturingResponse(ServerHttpResponse delegate, int maxBodySize) {
+            super(delegate);
+            this.maxBodySize = maxBodySize;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            snapshotHeaders();
+            return super.writeWith(Flux.from(body).doOnNext(this::capture));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // Streaming responses (SSE) are never stored
+            storable = false;
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            snapshotHeaders();
+            return super.setComplete();
+        }
+
+        private void snapshotHeaders() {
+            if (headers != null) {
+                return;
+            }
+            // Copied before downstream decorators (e.g. compression) rewrite the shared header map
+            headers = new HttpHeaders();
+            getHeaders().forEach((name, values) -> {
+                if (!EXCLUDED_HEADERS.contains(name.toLowerCase())) {
+                    headers.put(name, new ArrayList<>(values));
+                }
+            });
+        }
+
+        private void capture(DataBuffer buffer) {
+            if (!storable) {
+                return;
+            }
+            int length = buffer.readableByteCount();
+            if (body.size() + length > maxBodySize) {
+                storable = false;
+                body.reset();
+                return;
+            }
+            byte[] bytes = new byte[length];
+            int position = buffer.readPosition();
+            buffer.read(bytes);
+            buffer.readPosition(position);
+            body.writeBytes(bytes);
+        }
+
+        StoredResponse toStoredResponse() {
+            HttpStatusCode status = getStatusCode();
+            if (!storable || headers == null || status == null || status.is5xxServerError()
+                    || TRANSIENT_CLIENT_ERRORS.contains(status.value())) {
+                return null;
+            }
+            return new StoredResponse(status, headers, body.toByteArray());
+        }
+    }
+
+    /**
+     * Per-route overrides. Unset values fall back to the gateway.idempotency.* defaults.
+     */
+    @Data
+    public static class Config {
+        private Duration ttl;
+        private Integer maxBodySize;
+    }
+}
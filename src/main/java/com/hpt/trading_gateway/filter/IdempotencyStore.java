@@ -0,0 +1,205 @@
+package com.hpt.trading_gateway.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-bounded store backing IdempotencyFilter.
+ *
+ * Each key is in one of three states:
+ * - in flight: the first request is still being proxied; duplicates wait on its result
+ * - completed: the stored response is replayed until it expires
+ * - unresolved: the owner ended without knowing whether the backend ran the request (gateway
+ *   timeout, fallback, disconnect); the key stays taken until it expires so a retry cannot
+ *   start the same work twice
+ * Completed and unresolved entries are evicted least-recently-used first once either the
+ * entry cap or the byte budget is exceeded. In-flight entries are never evicted, so an
+ * attached duplicate always gets the owner's outcome.
+ *
+ * Expired entries are dropped when looked up or when they reach the LRU head. All operations
+ * run under a single lock that is never held while proxying or writing a response.
+ */
+final class IdempotencyStore {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    IdempotencyStore(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Response captured from the first request for a key.
+     */
+    record StoredResponse(HttpStatusCode status, HttpHeaders headers, byte[] body) {
+
+        long weight() {
+            long weight = body.length;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length();
+                for (String value : header.getValue()) {
+                    weight += value.length();
+                }
+            }
+            return weight;
+        }
+    }
+
+    static final class Entry {
+        private final Sinks.One<StoredResponse> result = Sinks.one();
+        private volatile StoredResponse response;
+        private volatile boolean unresolved;
+        private volatile String fingerprint;
+        private long expiresAt;
+        private long weight;
+
+        /**
+         * Emits the owner's stored response, or completes empty if the owner's response
+         * could not be stored (5xx, transient 4xx, too large) or its outcome is unresolved.
+         */
+        Mono<StoredResponse> result() {
+            return result.asMono();
+        }
+
+        /**
+         * Request body fingerprint of the owner, or null while its body has not been fully read.
+         */
+        String fingerprint() {
+            return fingerprint;
+        }
+
+        private boolean settled() {
+            return response != null || unresolved;
+        }
+    }
+
+    /**
+     * Outcome of a lookup: either the caller now owns a fresh in-flight entry, or an existing
+     * entry (in flight, completed or unresolved) was found.
+     */
+    record Lookup(Entry entry, boolean owner) {
+
+        StoredResponse completed() {
+            return entry.response;
+        }
+
+        boolean unresolved() {
+            return entry.unresolved;
+        }
+    }
+
+    /**
+     * Returns null when the store is full of in-flight entries and nothing can be evicted.
+     */
+    synchronized Lookup acquire(String key, long now) {
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            if (!existing.settled() || existing.expiresAt > now) {
+                return new Lookup(existing, false);
+            }
+            removeEntry(key);
+        }
+        if (entries.size() >= maxEntries) {
+            evict(maxEntries - 1, maxBytes);
+            if (entries.size() >= maxEntries) {
+                return null; // every slot is in flight, caller proceeds without idempotency
+            }
+        }
+        Entry entry = new Entry();
+        entries.put(key, entry);
+        return new Lookup(entry, true);
+    }
+
+    /**
+     * Stores the owner's response and wakes attached duplicates.
+     */
+    void complete(String key, Entry entry, StoredResponse response, String fingerprint, long expiresAt) {
+        long weight = key.length() + fingerprint.length() + response.weight();
+        synchronized (this) {
+            if (entries.get(key) != entry || weight > maxBytes) {
+                entries.remove(key, entry);
+                response = null;
+            } else {
+                entry.fingerprint = fingerprint;
+                entry.response = response;
+                entry.expiresAt = expiresAt;
+                entry.weight = weight;
+                totalBytes += weight;
+                evict(maxEntries, maxBytes);
+            }
+        }
+        if (response != null) {
+            entry.result.tryEmitValue(response);
+        } else {
+            entry.result.tryEmitEmpty();
+        }
+    }
+
+    /**
+     * Keeps the key taken until expiresAt without a response to replay, because the backend
+     * may still be running the request. Attached duplicates are released and will find the
+     * entry unresolved. fingerprint may be null if the owner's body was never fully read.
+     */
+    void markUnresolved(String key, Entry entry, String fingerprint, long expiresAt) {
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                entry.fingerprint = fingerprint;
+                entry.unresolved = true;
+                entry.expiresAt = expiresAt;
+                entry.weight = key.length() + (fingerprint != null ? fingerprint.length() : 0);
+                totalBytes += entry.weight;
+                evict(maxEntries, maxBytes);
+            }
+        }
+        entry.result.tryEmitEmpty();
+    }
+
+    /**
+     * Drops an in-flight entry without storing anything; attached duplicates are released
+     * and will retry as new owners.
+     */
+    void abandon(String key, Entry entry) {
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                removeEntry(key);
+            }
+        }
+        entry.result.tryEmitEmpty();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private void evict(int entryLimit, long byteLimit) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > entryLimit || totalBytes > byteLimit)) {
+            Entry entry = iterator.next().getValue();
+            if (entry.settled()) {
+                totalBytes -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeEntry(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null && removed.settled()) {
+            totalBytes -= removed.weight;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.hpt.trading_gateway.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hpt.trading_gateway.dto.UserData;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+
+/**
+ * Bounded store of recent successful token validations, used by AuthenticationFilter in
+ * degraded mode while the auth service is unreachable.
+ *
+ * Keys are SHA-256 hashes of the bearer token, so raw tokens never sit in gateway memory.
+ * Backed by a concurrent Caffeine cache capped at maxEntries and expiring entries once the
+ * grace window has passed since they were written. Every authenticated request passes
+ * through put, so an entry is only rewritten once it is older than a quarter of the grace
+ * window; the hot path is then a lock-free read.
+ */
+final class LastKnownGoodTokenStore {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private record Validation(UserData user, long validatedAt) {
+    }
+
+    private final Cache<String, Validation> entries;
+    private final long graceMillis;
+    private final long refreshAfterMillis;
+
+    LastKnownGoodTokenStore(int maxEntries, Duration gracePeriod) {
+        this.graceMillis = gracePeriod.toMillis();
+        this.refreshAfterMillis = graceMillis / 4;
+        this.entries = Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(gracePeriod)
+            .build();
+    }
+
+    void put(String tokenHash, UserData user, long now) {
+        Validation existing = entries.getIfPresent(tokenHash);
+        if (existing != null && now - existing.validatedAt() < refreshAfterMillis
+                && existing.user().equals(user)) {
+            return;
+        }
+        entries.put(tokenHash, new Validation(user, now));
+    }
+
+    /**
+     * Returns the user from a validation made within the grace window before now, or null.
+     */
+    UserData get(String tokenHash, long now) {
+        Validation validation = entries.getIfPresent(tokenHash);
+        if (validation == null || now - validation.validatedAt() > graceMillis) {
+            return null;
+        }
+        return validation.user();
+    }
+
+    void remove(String tokenHash) {
+        entries.invalidate(tokenHash);
+    }
+
+    static String hash(String token) {
+        MessageDigest digest = SHA_256.get();
+        return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+}
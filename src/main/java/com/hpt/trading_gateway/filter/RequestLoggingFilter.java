@@ -1,5 +1,6 @@
 package com.hpt.trading_gateway.filter;
 
+import com.hpt.trading_gateway.dto.UserData;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
@@ -38,7 +39,7 @@ public class RequestLoggingFilter implements GlobalFilter, Ordered {
         // Extract request information
         String method = request.getMethod().toString();
         String path = request.getURI().getPath();
-        String clientIp = getClientIp(request);
+        String clientIp = ClientIdentityFilter.getClientIp(exchange);
         String userAgent = request.getHeaders().getFirst(HttpHeaders.USER_AGENT);
         
         // Log incoming request
@@ -54,14 +55,14 @@ public class RequestLoggingFilter implements GlobalFilter, Ordered {
             .doOnSuccess(aVoid -> {
                 ServerHttpResponse response = exchange.getResponse();
                 long duration = System.currentTimeMillis() - startTime;
-                String userId = request.getHeaders().getFirst("X-User-Id");
+                UserData user = ClientIdentityFilter.getUser(exchange);
                 
                 // Log response
                 log.info("<<< Response: {} {} - Status: {} - Duration: {}ms - User: {}", 
                     method, path, 
                     response.getStatusCode(), 
                     duration,
-                    userId != null ? userId : "anonymous");
+                    user != null ? user.getId() : "anonymous");
             })
             .doOnError(error -> {
                 long duration = System.currentTimeMillis() - startTime;
@@ -73,36 +74,11 @@ public class RequestLoggingFilter implements GlobalFilter, Ordered {
     }
 
     /**
-     * Get the real client IP address, considering proxy headers
-     */
-    private String getClientIp(ServerHttpRequest request) {
-        // Check X-Forwarded-For header (set by proxies/load balancers)
-        String xForwardedFor = request.getHeaders().getFirst("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            // X-Forwarded-For can contain multiple IPs, take the first one
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        // Check X-Real-IP header
-        String xRealIp = request.getHeaders().getFirst("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
-        // Fall back to remote address
-        if (request.getRemoteAddress() != null) {
-            return request.getRemoteAddress().getAddress().getHostAddress();
-        }
-        
-        return "unknown";
-    }
-
-    /**
-     * Set high priority to ensure this filter runs first
+     * Run right after ClientIdentityFilter so the resolved client IP is available
      */
     @Override
     public int getOrder() {
-        return Ordered.HIGHEST_PRECEDENCE;
+        return Ordered.HIGHEST_PRECEDENCE + 1;
     }
 }
 
@@ -0,0 +1,465 @@
+package com.hpt.trading_gateway.filter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliEncoder;
+import io.netty.handler.codec.compression.JdkZlibEncoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.compression.Zstd;
+import io.netty.handler.codec.compression.ZstdEncoder;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response compression filter that encodes downstream responses before they leave the gateway.
+ * News, analytics and backtest payloads are large JSON documents, so compressing them once at
+ * the edge saves bandwidth on the public link without every backend having to do it.
+ *
+ * Behaviour:
+ * - Negotiates br / zstd / gzip from the client's Accept-Encoding (br and zstd only when the
+ *   native codecs are on the classpath)
+ * - Only compresses compressible content types above a configurable size threshold
+ * - Skips responses that are already encoded, SSE streams and bodiless responses
+ * - Weakens a strong ETag on compressed responses, since they are a different representation
+ * - Large or unknown-length bodies are encoded on the bounded elastic scheduler so the
+ *   event loop is never blocked by compression work
+ * - Buffers are handed to the codec and back to Netty without copying
+ * - Records bytes in/out/saved and encoder CPU time per route and encoding
+ *
+ * Every option can be overridden per route through the filter args.
+ */
+@Slf4j
+@Component
+public class ResponseCompressionFilter extends AbstractGatewayFilterFactory<ResponseCompressionFilter.Config> {
+
+    private static final String ENCODING_BROTLI = "br";
+    private static final String ENCODING_ZSTD = "zstd";
+    private static final String ENCODING_GZIP = "gzip";
+
+    /**
+     * Must run before NettyWriteResponseFilter so the decorated response is the one it writes to,
+     * and outside IdempotencyFilter so stored responses are kept uncompressed.
+     */
+    public static final int ORDER = NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 3;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${gateway.compression.min-size:1024}")
+    private int defaultMinSize;
+
+    @Value("${gateway.compression.offload-size:65536}")
+    private int defaultOffloadSize;
+
+    @Value("${gateway.compression.mime-types:application/json,application/problem+json,application/xml,text/html,text/plain,text/csv,text/xml}")
+    private List<String> defaultMimeTypes;
+
+    @Value("${gateway.compression.encodings:br,zstd,gzip}")
+    private List<String> defaultEncodings;
+
+    public ResponseCompressionFilter(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        int minSize = config.getMinSize() != null ? config.getMinSize() : defaultMinSize;
+        int offloadSize = config.getOffloadSize() != null ? config.getOffloadSize() : defaultOffloadSize;
+        List<MediaType> mimeTypes = parseMediaTypes(
+            config.getMimeTypes() != null ? config.getMimeTypes() : defaultMimeTypes);
+        List<String> encodings = availableEncodings(
+            config.getEncodings() != null ? config.getEncodings() : defaultEncodings);
+
+        return new OrderedGatewayFilter((exchange, chain) -> {
+            if (HttpMethod.HEAD.equals(exchange.getRequest().getMethod())) {
+                return chain.filter(exchange);
+            }
+
+            String encoding = negotiate(
+                exchange.getRequest().getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING), encodings);
+            if (encoding == null) {
+                return chain.filter(exchange);
+            }
+
+            ServerHttpResponse decorated = new CompressingResponse(
+                exchange, encoding, minSize, offloadSize, mimeTypes);
+            return chain.filter(exchange.mutate().response(decorated).build());
+        }, ORDER);
+    }
+
+    /**
+     * Picks the first configured encoding the client accepts (q=0 means refused).
+     * Configured order is the server preference.
+     */
+    static String negotiate(String acceptEncoding, List<String> encodings) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        List<String> accepted = new ArrayList<>();
+        List<String> refused = new ArrayList<>();
+        boolean wildcard = false;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (parts.length > 1 && isRefused(parts[1])) {
+                refused.add(coding);
+                continue;
+            }
+            if ("*".equals(coding)) {
+                wildcard = true;
+            } else {
+                accepted.add(coding);
+            }
+        }
+        for (String encoding : encodings) {
+            if (accepted.contains(encoding) || (wildcard && !refused.contains(encoding))) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRefused(String param) {
+        String trimmed = param.trim();
+        if (!trimmed.startsWith("q=")) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(trimmed.substring(2).trim()) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private List<String> availableEncodings(List<String> configured) {
+        List<String> result = new ArrayList<>();
+        for (String encoding : configured) {
+            String normalized = encoding.trim().toLowerCase(Locale.ROOT);
+            switch (normalized) {
+                case ENCODING_BROTLI -> {
+                    if (Brotli.isAvailable()) {
+                        result.add(normalized);
+                    } else {
+                        log.debug("Brotli codec not available, skipping br encoding");
+                    }
+                }
+                case ENCODING_ZSTD -> {
+                    if (Zstd.isAvailable()) {
+                        result.add(normalized);
+                    } else {
+                        log.debug("Zstd codec not available, skipping zstd encoding");
+                    }
+                }
+                case ENCODING_GZIP -> result.add(normalized);
+                default -> log.warn("Unsupported compression encoding configured: {}", encoding);
+            }
+        }
+        return result;
+    }
+
+    private static List<MediaType> parseMediaTypes(List<String> values) {
+        List<MediaType> result = new ArrayList<>();
+        for (String value : values) {
+            result.add(MediaType.parseMediaType(value.trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Response decorator that decides whether to compress once the backend headers are known,
+     * i.e. when NettyWriteResponseFilter calls writeWith. SSE and other streaming media types are
+     * written through writeAndFlushWith, which is deliberately left untouched.
+     */
+    private class CompressingResponse extends ServerHttpResponseDecorator {
+
+        private final ServerWebExchange exchange;
+        private final String encoding;
+        private final int minSize;
+        private final int offloadSize;
+        private final List<MediaType> mimeTypes;
+
+        CompressingResponse(ServerWebExchange exchange, String encoding, int minSize,
+                            int offloadSize, List<MediaType> mimeTypes) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.encoding = encoding;
+            this.minSize = minSize;
+            this.offloadSize = offloadSize;
+            this.mimeTypes = mimeTypes;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpHeaders headers = getHeaders();
+            if (!shouldCompress(headers)) {
+                return super.writeWith(body);
+            }
+
+            long contentLength = headers.getContentLength();
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding);
+            // The encoded bytes are a different representation, so they must not share a strong
+            // validator with the identity response
+            String etag = headers.getETag();
+            if (etag != null && !etag.startsWith("W/")) {
+                headers.setETag("W/" + etag);
+            }
+            if (!headers.getVary().contains(HttpHeaders.ACCEPT_ENCODING)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+
+            Flux<? extends DataBuffer> source = Flux.from(body);
+            // Unknown length (chunked) is treated as large: keep the deflate loop off the event loop.
+            // Prefetch 1 so at most one upstream chunk waits for the worker instead of 256.
+            if (contentLength < 0 || contentLength >= offloadSize) {
+                source = source.publishOn(Schedulers.boundedElastic(), 1);
+            }
+
+            NettyDataBufferFactory bufferFactory = nettyBufferFactory(bufferFactory());
+            StreamingEncoder encoder = new StreamingEncoder(encoding);
+            Flux<DataBuffer> compressed = source
+                .<DataBuffer>handle((buffer, sink) -> {
+                    ByteBuf out = encoder.encode(buffer);
+                    if (out != null) {
+                        sink.next(bufferFactory.wrap(out));
+                    }
+                })
+                .concatWith(Mono.fromCallable(encoder::finish).map(bufferFactory::wrap))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .doFinally(signal -> {
+                    encoder.release();
+                    recordMetrics(encoder);
+                });
+
+            return super.writeWith(compressed);
+        }
+
+        private boolean shouldCompress(HttpHeaders headers) {
+            HttpStatusCode status = getStatusCode();
+            if (status != null && (status.value() == HttpStatus.NO_CONTENT.value()
+                    || status.value() == HttpStatus.NOT_MODIFIED.value())) {
+                return false;
+            }
+            if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                return false;
+            }
+            String cacheControl = headers.getCacheControl();
+            if (cacheControl != null && cacheControl.contains("no-transform")) {
+                return false;
+            }
+            long contentLength = headers.getContentLength();
+            if (contentLength >= 0 && contentLength < minSize) {
+                return false;
+            }
+
+            MediaType contentType;
+            try {
+                contentType = headers.getContentType();
+            } catch (InvalidMediaTypeException e) {
+                return false;
+            }
+            if (contentType == null || MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType)) {
+                return false;
+            }
+            for (MediaType mimeType : mimeTypes) {
+                if (mimeType.isCompatibleWith(contentType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void recordMetrics(StreamingEncoder encoder) {
+            Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+            Tags tags = Tags.of("route", route != null ? route.getId() : "unknown", "encoding", encoding);
+
+            meterRegistry.counter("gateway.compression.bytes.in", tags).increment(encoder.bytesIn);
+            meterRegistry.counter("gateway.compression.bytes.out", tags).increment(encoder.bytesOut);
+            meterRegistry.counter("gateway.compression.bytes.saved", tags)
+                .increment(Math.max(0, encoder.bytesIn - encoder.bytesOut));
+            meterRegistry.timer("gateway.compression.cpu.time", tags)
+                .record(encoder.cpuNanos, TimeUnit.NANOSECONDS);
+
+            log.debug("Compressed response with {}: {} -> {} bytes in {}us CPU",
+                encoding, encoder.bytesIn, encoder.bytesOut, encoder.cpuNanos / 1000);
+        }
+    }
+
+    /**
+     * Output buffers come straight from the codec as ByteBufs, so they are wrapped with a Netty
+     * factory. The server's own factory is reused when it is one (always, under Reactor Netty).
+     */
+    private static NettyDataBufferFactory nettyBufferFactory(DataBufferFactory factory) {
+        return factory instanceof NettyDataBufferFactory nettyFactory
+            ? nettyFactory : new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Chunk-at-a-time encoder backed by Netty's compression codecs in an EmbeddedChannel.
+     * Calls are serialized by the reactive pipeline; methods are synchronized only so that a
+     * cancellation racing with an in-flight chunk cannot release the channel underneath it.
+     *
+     * Encoding time is measured as thread CPU time, so time spent descheduled on a busy
+     * elastic worker is not counted. Falls back to wall-clock time where the JVM does not
+     * support per-thread CPU timing.
+     */
+    private static final class StreamingEncoder {
+
+        private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+        private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+            && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
+        private final EmbeddedChannel channel;
+        private long bytesIn;
+        private long bytesOut;
+        private long cpuNanos;
+        private boolean released;
+
+        StreamingEncoder(String encoding) {
+            this.channel = new EmbeddedChannel(newEncoder(encoding));
+        }
+
+        private static ChannelHandler newEncoder(String encoding) {
+            return switch (encoding) {
+                case ENCODING_BROTLI -> new BrotliEncoder();
+                case ENCODING_ZSTD -> new ZstdEncoder();
+                default -> new JdkZlibEncoder(ZlibWrapper.GZIP);
+            };
+        }
+
+        /**
+         * Feeds the buffer to the codec without copying and returns whatever output it produced,
+         * or null if the codec is still buffering. Ownership of the input buffer is taken.
+         */
+        synchronized ByteBuf encode(DataBuffer buffer) {
+            if (released) {
+                DataBufferUtils.release(buffer);
+                return null;
+            }
+            long start = cpuTime();
+            bytesIn += buffer.readableByteCount();
+            if (buffer instanceof NettyDataBuffer nettyBuffer) {
+                // The codec releases its input, which releases the DataBuffer with it
+                channel.writeOutbound(nettyBuffer.getNativeBuffer());
+            } else {
+                try {
+                    channel.writeOutbound(wrap(buffer));
+                } finally {
+                    DataBufferUtils.release(buffer);
+                }
+            }
+            ByteBuf out = drain();
+            cpuNanos += cpuTime() - start;
+            return out;
+        }
+
+        synchronized ByteBuf finish() {
+            if (released) {
+                return null;
+            }
+            long start = cpuTime();
+            channel.finish();
+            ByteBuf out = drain();
+            cpuNanos += cpuTime() - start;
+            return out;
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                channel.finishAndReleaseAll();
+            }
+        }
+
+        private static ByteBuf wrap(DataBuffer buffer) {
+            List<ByteBuffer> nioBuffers = new ArrayList<>(1);
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                iterator.forEachRemaining(nioBuffers::add);
+            }
+            return Unpooled.wrappedBuffer(nioBuffers.toArray(ByteBuffer[]::new));
+        }
+
+        /**
+         * Collects the codec output into a single buffer, composing rather than copying when
+         * there is more than one piece. Returns null when there is nothing to send.
+         */
+        private ByteBuf drain() {
+            ByteBuf first = channel.readOutbound();
+            if (first == null) {
+                return null;
+            }
+            ByteBuf next = channel.readOutbound();
+            ByteBuf out = first;
+            if (next != null) {
+                CompositeByteBuf composite = channel.alloc().compositeBuffer();
+                composite.addComponent(true, first);
+                do {
+                    composite.addComponent(true, next);
+                } while ((next = channel.readOutbound()) != null);
+                out = composite;
+            }
+            if (!out.isReadable()) {
+                out.release();
+                return null;
+            }
+            bytesOut += out.readableBytes();
+            return out;
+        }
+
+        private static long cpuTime() {
+            return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : System.nanoTime();
+        }
+    }
+
+    /**
+     * Per-route overrides. Unset values fall back to the gateway.compression.* defaults.
+     */
+    @Data
+    public static class Config {
+        private Integer minSize;
+        private Integer offloadSize;
+        private List<String> mimeTypes;
+        private List<String> encodings;
+    }
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hpt.trading_gateway.dto.ErrorResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
 import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -25,6 +26,11 @@ import reactor.core.publisher.Mono;
 @Component
 public class VipAuthorizationFilter extends AbstractGatewayFilterFactory<VipAuthorizationFilter.Config> {
 
+    /**
+     * Runs right after AuthenticationFilter, which provides the account type header
+     */
+    public static final int ORDER = AuthenticationFilter.ORDER + 1;
+
     private static final String VIP_ACCOUNT_TYPE = "VIP";
     private static final String ACCOUNT_TYPE_HEADER = "X-User-AccountType";
 
@@ -37,7 +43,7 @@ public class VipAuthorizationFilter extends AbstractGatewayFilterFactory<VipAuth
 
     @Override
     public GatewayFilter apply(Config config) {
-        return (exchange, chain) -> {
+        return new OrderedGatewayFilter((exchange, chain) -> {
             // Get the current request from exchange (may have been mutated by previous filters)
             ServerHttpRequest request = exchange.getRequest();
 
@@ -67,7 +73,7 @@ public class VipAuthorizationFilter extends AbstractGatewayFilterFactory<VipAuth
             log.info("VIP access granted for user with account type: {} - Path: {}",
                 accountType, request.getURI());
             return chain.filter(exchange);
-        };
+        }, ORDER);
     }
 
     /**
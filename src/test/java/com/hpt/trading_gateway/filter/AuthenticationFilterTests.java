@@ -0,0 +1,196 @@
+package com.hpt.trading_gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Degraded-mode decision table of AuthenticationFilter: which requests are served from a
+ * last-known-good validation while the /me circuit is open, and what clears that state.
+ */
+class AuthenticationFilterTests {
+
+	private static final String TOKEN = "Bearer eyJhbGciOiJIUzI1NiJ9.test.signature";
+
+	private static final String USER_JSON = "{\"success\":true,\"data\":{\"id\":\"u-1\",\"email\":\"trader@example.com\","
+		+ "\"firstName\":\"Lan\",\"lastName\":\"Tran\",\"enabled\":true,\"accountType\":\"VIP\"}}";
+
+	private final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("authValidationCircuitBreaker");
+
+	private final AtomicReference<HttpStatus> authServiceStatus = new AtomicReference<>(HttpStatus.OK);
+
+	private AuthenticationFilter factory;
+
+	@BeforeEach
+	void setUp() {
+		factory = filterFactory(Duration.ofMinutes(5));
+	}
+
+	@Test
+	void servesSafeRequestOnDegradedRouteFromLastKnownGoodValidation() {
+		assertThat(run(readOnlyRoute(), HttpMethod.GET).status()).isNull();
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNotNull();
+		assertThat(result.forwarded().getHeaders().getFirst("X-User-Id")).isEqualTo("u-1");
+		assertThat(result.forwarded().getHeaders().getFirst(AuthenticationFilter.DEGRADED_HEADER)).isEqualTo("true");
+		assertThat(result.exchange().getResponse().getHeaders().getFirst(AuthenticationFilter.DEGRADED_HEADER))
+			.isEqualTo("true");
+	}
+
+	@Test
+	void stripsClientSuppliedDegradedHeaderOnLiveValidation() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/predictions")
+			.header(HttpHeaders.AUTHORIZATION, TOKEN)
+			.header(AuthenticationFilter.DEGRADED_HEADER, "true"));
+		AtomicReference<ServerHttpRequest> forwarded = new AtomicReference<>();
+
+		StepVerifier.create(factory.apply(readOnlyRoute()).filter(exchange, capture(forwarded))).verifyComplete();
+
+		assertThat(forwarded.get().getHeaders().containsKey(AuthenticationFilter.DEGRADED_HEADER)).isFalse();
+	}
+
+	@Test
+	void rejectsUnsafeMethodWhileCircuitIsOpen() {
+		run(readOnlyRoute(), HttpMethod.GET);
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.POST);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void rejectsRouteWithoutAllowDegradedWhileCircuitIsOpen() {
+		run(new AuthenticationFilter.Config(), HttpMethod.GET);
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(new AuthenticationFilter.Config(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void rejectsUnknownTokenWhileCircuitIsOpen() {
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void rejectsValidationOlderThanGracePeriod() throws InterruptedException {
+		factory = filterFactory(Duration.ofMillis(1));
+		run(readOnlyRoute(), HttpMethod.GET);
+		Thread.sleep(20);
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void tokenRejectionClearsLastKnownGoodValidation() {
+		run(readOnlyRoute(), HttpMethod.GET);
+
+		authServiceStatus.set(HttpStatus.UNAUTHORIZED);
+		assertThat(run(readOnlyRoute(), HttpMethod.GET).status()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@Test
+	void logoutRouteRemovesLastKnownGoodValidation() {
+		run(readOnlyRoute(), HttpMethod.GET);
+
+		AuthenticationFilter.Config logout = new AuthenticationFilter.Config();
+		logout.setRevokesToken(true);
+		assertThat(run(logout, HttpMethod.POST).forwarded()).isNotNull();
+
+		circuitBreaker.transitionToForcedOpenState();
+		Result result = run(readOnlyRoute(), HttpMethod.GET);
+
+		assertThat(result.forwarded()).isNull();
+		assertThat(result.status()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	private record Result(MockServerWebExchange exchange, ServerHttpRequest forwarded) {
+
+		HttpStatus status() {
+			return exchange.getResponse().getStatusCode() != null
+				? HttpStatus.valueOf(exchange.getResponse().getStatusCode().value()) : null;
+		}
+	}
+
+	private Result run(AuthenticationFilter.Config config, HttpMethod method) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.method(method, "/api/v1/predictions").header(HttpHeaders.AUTHORIZATION, TOKEN));
+		AtomicReference<ServerHttpRequest> forwarded = new AtomicReference<>();
+
+		StepVerifier.create(factory.apply(config).filter(exchange, capture(forwarded))).verifyComplete();
+
+		return new Result(exchange, forwarded.get());
+	}
+
+	private static GatewayFilterChain capture(AtomicReference<ServerHttpRequest> forwarded) {
+		return exchange -> {
+			forwarded.set(exchange.getRequest());
+			return Mono.empty();
+		};
+	}
+
+	private static AuthenticationFilter.Config readOnlyRoute() {
+		AuthenticationFilter.Config config = new AuthenticationFilter.Config();
+		config.setAllowDegraded(true);
+		return config;
+	}
+
+	/**
+	 * Filter whose /me call is answered in-process with authServiceStatus
+	 */
+	private AuthenticationFilter filterFactory(Duration gracePeriod) {
+		WebClient.Builder webClient = WebClient.builder().exchangeFunction(request -> {
+			HttpStatus status = authServiceStatus.get();
+			ClientResponse.Builder response = ClientResponse.create(status)
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+			return Mono.just(status.is2xxSuccessful() ? response.body(USER_JSON).build() : response.build());
+		});
+		AuthenticationFilter filter = new AuthenticationFilter(webClient, new ObjectMapper().findAndRegisterModules(),
+			circuitBreaker, Bulkhead.ofDefaults("authValidationBulkhead"), true, gracePeriod, 100);
+		ReflectionTestUtils.setField(filter, "authServiceUrl", "http://auth-service");
+		ReflectionTestUtils.setField(filter, "gatewaySecret", "test-secret");
+		return filter;
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.hpt.trading_gateway.filter;
+
+import com.hpt.trading_gateway.dto.ErrorResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A chunked request body cut off by BodySizeLimitFilter behind a CircuitBreaker filter with a
+ * fallbackUri must still reach the client as 413, not as the fallback's 503.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class BodySizeLimitCircuitBreakerTests {
+
+	private static final String SINK_PATH = "/test/body-limit/sink";
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Test
+	void oversizedChunkedBodyBehindCircuitBreakerFallbackIsPayloadTooLarge() {
+		// Publisher bodies are sent chunked, so only the streaming limit can catch this one
+		Flux<String> body = Flux.range(0, 8).map(i -> "x".repeat(1024));
+
+		ErrorResponse error = webTestClient.post().uri("/test/body-limit/upload")
+			.contentType(MediaType.TEXT_PLAIN)
+			.body(BodyInserters.fromPublisher(body, String.class))
+			.exchange()
+			.expectStatus().isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE)
+			.expectBody(ErrorResponse.class)
+			.returnResult()
+			.getResponseBody();
+
+		assertThat(error).isNotNull();
+		assertThat(error.getMessage()).isEqualTo("Request body is too large");
+	}
+
+	@Test
+	void bodyWithinLimitIsForwarded() {
+		webTestClient.post().uri("/test/body-limit/upload")
+			.contentType(MediaType.TEXT_PLAIN)
+			.body(BodyInserters.fromPublisher(Flux.just("small"), String.class))
+			.exchange()
+			.expectStatus().isOk()
+			.expectBody(String.class).isEqualTo("read 5");
+	}
+
+	@TestConfiguration
+	static class Routes {
+
+		@Bean
+		RouteLocator bodyLimitTestRoutes(RouteLocatorBuilder builder, BodySizeLimitFilter bodySizeLimitFilter) {
+			BodySizeLimitFilter.Config config = new BodySizeLimitFilter.Config();
+			config.setMaxRequestSize(DataSize.ofKilobytes(4));
+			return builder.routes()
+				.route("body-limit-test", route -> route.path("/test/body-limit/upload")
+					.filters(filters -> filters
+						.filter(bodySizeLimitFilter.apply(config))
+						.circuitBreaker(circuitBreaker -> circuitBreaker
+							.setName("bodyLimitTestCircuitBreaker")
+							.setFallbackUri("forward:/fallback/service")))
+					.uri("forward:" + SINK_PATH))
+				.build();
+		}
+
+		/**
+		 * Stands in for the backend: reads the whole request body
+		 */
+		@Bean
+		RouterFunction<ServerResponse> bodyLimitTestSink() {
+			return RouterFunctions.route(RequestPredicates.POST(SINK_PATH), request -> request
+				.bodyToMono(String.class)
+				.flatMap(body -> ServerResponse.ok().bodyValue("read " + body.length())));
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package com.hpt.trading_gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Large-payload attack scenarios for BodySizeLimitFilter.
+ *
+ * Bodies are generated lazily, one freshly allocated 64KB chunk at a time, and the fake proxy
+ * releases each chunk as soon as it is forwarded. Counting chunks generated versus forwarded
+ * shows the filter never holds more than the chunk in hand, i.e. heap use stays flat no matter
+ * how large the payload is.
+ */
+class BodySizeLimitFilterTests {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final BodySizeLimitFilter factory = new BodySizeLimitFilter(
+		new ObjectMapper().findAndRegisterModules(), DataSize.ofMegabytes(10), DataSize.ofMegabytes(50));
+
+	@Test
+	void rejectsOversizedContentLengthWithoutProxying() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.post("/api/v1/backtest/run")
+				.contentLength(DataSize.ofGigabytes(4).toBytes())
+				.build());
+		AtomicBoolean proxied = new AtomicBoolean();
+
+		StepVerifier.create(filter(DataSize.ofMegabytes(1), DataSize.ofMegabytes(50))
+				.filter(exchange, ex -> {
+					proxied.set(true);
+					return Mono.empty();
+				}))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+		assertThat(proxied).isFalse();
+	}
+
+	@Test
+	void cutsOffEndlessChunkedRequestOnceLimitIsCrossed() {
+		long limit = DataSize.ofMegabytes(1).toBytes();
+		AtomicLong generated = new AtomicLong();
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.post("/api/v1/ai/analyze").body(endlessBody(generated)));
+		AtomicLong forwarded = new AtomicLong();
+
+		StepVerifier.create(filter(DataSize.ofBytes(limit), DataSize.ofMegabytes(50))
+				.filter(exchange, forwardRequestBody(forwarded, new AtomicLong(), generated)))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+		assertThat(forwarded.get()).isLessThanOrEqualTo(limit);
+		assertThat(generated.get()).isLessThanOrEqualTo(limit / CHUNK_SIZE + 1);
+	}
+
+	@Test
+	void streamsOneGigabyteRequestWithFlatHeap() {
+		long total = DataSize.ofGigabytes(1).toBytes();
+		AtomicLong generated = new AtomicLong();
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.post("/api/v1/backtest/run")
+				.body(endlessBody(generated).take(total / CHUNK_SIZE)));
+		AtomicLong forwarded = new AtomicLong();
+		AtomicLong peakInFlight = new AtomicLong();
+
+		StepVerifier.create(filter(DataSize.ofGigabytes(2), DataSize.ofMegabytes(50))
+				.filter(exchange, forwardRequestBody(forwarded, peakInFlight, generated)))
+			.verifyComplete();
+
+		assertThat(forwarded.get()).isEqualTo(total);
+		// Never more than the chunk currently being forwarded is alive
+		assertThat(peakInFlight.get()).isLessThanOrEqualTo(1);
+	}
+
+	@Test
+	void replacesOversizedUpstreamResponseWithBadGatewayWithoutReadingIt() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.get("/api/v1/backtest/results"));
+		AtomicLong generated = new AtomicLong();
+
+		StepVerifier.create(filter(DataSize.ofMegabytes(10), DataSize.ofMegabytes(1))
+				.filter(exchange, ex -> {
+					ex.getResponse().setStatusCode(HttpStatus.OK);
+					ex.getResponse().getHeaders().setContentLength(DataSize.ofGigabytes(4).toBytes());
+					return ex.getResponse().writeWith(endlessBody(generated));
+				}))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+		assertThat(exchange.getResponse().getBodyAsString().block()).contains("Upstream response is too large");
+		assertThat(generated.get()).isZero();
+	}
+
+	@Test
+	void keepsCorsAndGatewayHeadersWhenReplacingOversizedResponse() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.get("/api/v1/backtest/results"));
+		// Set by CORS handling, Spring Security and AuthenticationFilter before the route runs
+		HttpHeaders headers = exchange.getResponse().getHeaders();
+		headers.setAccessControlAllowOrigin("http://localhost:3000");
+		headers.set("X-Content-Type-Options", "nosniff");
+		headers.set("X-Gateway-Degraded", "true");
+
+		StepVerifier.create(filter(DataSize.ofMegabytes(10), DataSize.ofMegabytes(1))
+				.filter(exchange, ex -> {
+					ex.getResponse().setStatusCode(HttpStatus.OK);
+					ex.getResponse().getHeaders().setContentLength(DataSize.ofGigabytes(4).toBytes());
+					ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_OCTET_STREAM);
+					ex.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+					ex.getResponse().getHeaders().setETag("\"v1\"");
+					return ex.getResponse().writeWith(endlessBody(new AtomicLong()));
+				}))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+		assertThat(headers.getAccessControlAllowOrigin()).isEqualTo("http://localhost:3000");
+		assertThat(headers.getFirst("X-Content-Type-Options")).isEqualTo("nosniff");
+		assertThat(headers.getFirst("X-Gateway-Degraded")).isEqualTo("true");
+		assertThat(headers.getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+		assertThat(headers.containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+		assertThat(headers.getETag()).isNull();
+	}
+
+	@Test
+	void abortsEndlessChunkedUpstreamResponseMidFlight() {
+		long limit = DataSize.ofMegabytes(1).toBytes();
+		MockServerWebExchange exchange = MockServerWebExchange.from(
+			MockServerHttpRequest.get("/api/v1/ai/analyze"));
+		AtomicLong written = new AtomicLong();
+		exchange.getResponse().setWriteHandler(body -> body
+			.doOnNext(buffer -> {
+				written.addAndGet(buffer.readableByteCount());
+				DataBufferUtils.release(buffer);
+			})
+			.then());
+		AtomicLong generated = new AtomicLong();
+
+		// Headers are already committed, so the error propagates and the connection is aborted
+		StepVerifier.create(filter(DataSize.ofMegabytes(10), DataSize.ofBytes(limit))
+				.filter(exchange, ex -> {
+					ex.getResponse().setStatusCode(HttpStatus.OK);
+					return ex.getResponse().writeWith(endlessBody(generated));
+				}))
+			.expectError()
+			.verify();
+
+		assertThat(written.get()).isLessThanOrEqualTo(limit);
+		assertThat(generated.get()).isLessThanOrEqualTo(limit / CHUNK_SIZE + 1);
+	}
+
+	private GatewayFilter filter(DataSize maxRequestSize, DataSize maxResponseSize) {
+		BodySizeLimitFilter.Config config = new BodySizeLimitFilter.Config();
+		config.setMaxRequestSize(maxRequestSize);
+		config.setMaxResponseSize(maxResponseSize);
+		return factory.apply(config);
+	}
+
+	/**
+	 * Unbounded body that allocates a new chunk only when one is requested
+	 */
+	private static Flux<DataBuffer> endlessBody(AtomicLong generated) {
+		return Flux.generate(sink -> {
+			generated.incrementAndGet();
+			sink.next(DefaultDataBufferFactory.sharedInstance.wrap(new byte[CHUNK_SIZE]));
+		});
+	}
+
+	/**
+	 * Stands in for NettyRoutingFilter: forwards the request body chunk by chunk and releases it
+	 */
+	private static GatewayFilterChain forwardRequestBody(AtomicLong forwarded, AtomicLong peakInFlight,
+			AtomicLong generated) {
+		AtomicLong released = new AtomicLong();
+		return exchange -> exchange.getRequest().getBody()
+			.doOnNext(buffer -> {
+				peakInFlight.accumulateAndGet(generated.get() - released.get(), Math::max);
+				forwarded.addAndGet(buffer.readableByteCount());
+				DataBufferUtils.release(buffer);
+				released.incrementAndGet();
+			})
+			.then();
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.hpt.trading_gateway.filter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * The allocation-free literal parser must agree with InetAddress on every valid address.
+ */
+class CidrTrieTests {
+
+	private final CidrTrie trie = trie("127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.1.1",
+		"::1/128", "fc00::/7", "2001:db8:abcd::/48");
+
+	@ParameterizedTest
+	@CsvSource({
+		"127.0.0.1, true",
+		"127.255.255.255, true",
+		"128.0.0.1, false",
+		"10.20.30.40, true",
+		"11.0.0.0, false",
+		"172.16.0.1, true",
+		"172.31.255.255, true",
+		"172.32.0.1, false",
+		"192.168.1.1, true",
+		"192.168.1.2, false",
+		"0.0.0.0, false",
+		"::1, true",
+		"::, false",
+		"0:0:0:0:0:0:0:1, true",
+		"fc00::1, true",
+		"fdff:ffff::abcd, true",
+		"fe00::1, false",
+		"2001:db8:abcd::1, true",
+		"2001:DB8:ABCD:FFFF:FFFF:FFFF:FFFF:FFFF, true",
+		"2001:db8:abce::1, false",
+		"::ffff:10.1.2.3, true",
+		"::ffff:11.1.2.3, false",
+		"0:0:0:0:0:ffff:c0a8:101, true",
+		"2001:db8:abcd:0::1:2, true",
+		"1::, false"
+	})
+	void literalLookupAgreesWithInetAddress(String literal, boolean expected) throws UnknownHostException {
+		assertThat(trie.contains(literal, 0, literal.length())).isEqualTo(expected);
+		assertThat(trie.contains(InetAddress.getByName(literal))).isEqualTo(expected);
+	}
+
+	@Test
+	void looksUpLiteralWithinLargerString() {
+		String header = "x 10.0.0.1 y";
+		assertThat(trie.contains(header, 2, 10)).isTrue();
+		assertThat(trie.contains("fc00::1%eth0", 0, 12)).isTrue();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"", "1.2.3", "1.2.3.4.5", "256.0.0.1", "10.0.0.-1", "10..0.1", "unknown",
+		"1::2::3", "::g", "12345::1", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "fc00::1:", "::ffff:10.0.0"})
+	void neverTrustsUnparseableLiterals(String literal) {
+		assertThat(trie.contains(literal, 0, literal.length())).isFalse();
+	}
+
+	@Test
+	void parsesDottedQuad() {
+		assertThat(CidrTrie.parseIpv4("192.168.1.1", 0, 11)).isEqualTo(0xC0A80101L);
+		assertThat(CidrTrie.parseIpv4("255.255.255.255", 0, 15)).isEqualTo(0xFFFFFFFFL);
+		assertThat(CidrTrie.parseIpv4("1.2.3.256", 0, 9)).isEqualTo(-1);
+	}
+
+	@Test
+	void rejectsInvalidCidr() {
+		assertThatIllegalArgumentException().isThrownBy(() -> trie("10.0.0.0/33"));
+		assertThatIllegalArgumentException().isThrownBy(() -> trie("10.0.0/8"));
+		assertThatIllegalArgumentException().isThrownBy(() -> trie("fc00::/129"));
+	}
+
+	private static CidrTrie trie(String... cidrs) {
+		CidrTrie trie = new CidrTrie();
+		for (String cidr : cidrs) {
+			trie.add(cidr);
+		}
+		return trie;
+	}
+
+}
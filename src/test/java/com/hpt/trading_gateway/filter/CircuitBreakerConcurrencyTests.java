@@ -0,0 +1,106 @@
+package com.hpt.trading_gateway.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.cloud.gateway.route.builder.RouteLocatorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A route behind a CircuitBreaker filter must not be capped by Spring Cloud CircuitBreaker's
+ * default Resilience4j bulkhead (25 concurrent calls), which resilience4j-bulkhead on the
+ * classpath would otherwise enable for every circuit breaker.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class CircuitBreakerConcurrencyTests {
+
+	private static final int REQUESTS = 40;
+
+	private static final String SINK_PATH = "/test/circuit-breaker/sink";
+
+	private static final AtomicInteger arrived = new AtomicInteger();
+
+	private static final Sinks.Empty<Void> allArrived = Sinks.empty();
+
+	@LocalServerPort
+	private int port;
+
+	@Test
+	void concurrentRequestsBeyondDefaultBulkheadAreAllProxied() {
+		ConnectionProvider connections = ConnectionProvider.builder("circuit-breaker-concurrency")
+			.maxConnections(REQUESTS)
+			.build();
+		WebClient client = WebClient.builder()
+			.baseUrl("http://localhost:" + port)
+			.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+			.build();
+
+		try {
+			List<HttpStatusCode> statuses = Flux.range(0, REQUESTS)
+				.flatMap(i -> client.get().uri("/test/circuit-breaker/news")
+					.exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode())), REQUESTS)
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+			assertThat(arrived).hasValue(REQUESTS);
+			assertThat(statuses).hasSize(REQUESTS).allMatch(HttpStatusCode::is2xxSuccessful);
+		} finally {
+			connections.dispose();
+		}
+	}
+
+	@TestConfiguration
+	static class Routes {
+
+		@Bean
+		RouteLocator circuitBreakerConcurrencyTestRoutes(RouteLocatorBuilder builder) {
+			return builder.routes()
+				.route("circuit-breaker-concurrency-test", route -> route.path("/test/circuit-breaker/news")
+					.filters(filters -> filters
+						.circuitBreaker(circuitBreaker -> circuitBreaker
+							.setName("concurrencyTestCircuitBreaker")
+							.setFallbackUri("forward:/fallback/service")))
+					.uri("forward:" + SINK_PATH))
+				.build();
+		}
+
+		/**
+		 * Stands in for a slow backend: holds every request until all of them are in flight at
+		 * once, or gives up after a few seconds if some never got past the circuit breaker
+		 */
+		@Bean
+		RouterFunction<ServerResponse> circuitBreakerConcurrencyTestSink() {
+			return RouterFunctions.route(RequestPredicates.GET(SINK_PATH), request -> {
+				if (arrived.incrementAndGet() == REQUESTS) {
+					allArrived.tryEmitEmpty();
+				}
+				return allArrived.asMono()
+					.timeout(Duration.ofSeconds(5), Mono.empty())
+					.then(ServerResponse.ok().bodyValue("ok"));
+			});
+		}
+	}
+
+}
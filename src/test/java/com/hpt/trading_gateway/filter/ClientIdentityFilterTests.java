@@ -0,0 +1,114 @@
+package com.hpt.trading_gateway.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Client IP resolution from the TCP peer and forwarding headers.
+ */
+class ClientIdentityFilterTests {
+
+	private final ClientIdentityFilter filter = new ClientIdentityFilter(
+		List.of("127.0.0.0/8", "::1/128", "10.0.0.0/8"));
+
+	@Test
+	void ignoresForwardingHeadersFromUntrustedPeer() {
+		MockServerHttpRequest request = from("203.0.113.9")
+			.header("X-Forwarded-For", "1.2.3.4")
+			.header("Forwarded", "for=1.2.3.4")
+			.header("X-Real-IP", "1.2.3.4")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("203.0.113.9");
+	}
+
+	@Test
+	void usesPeerWhenTrustedProxySendsNoHeaders() {
+		assertThat(filter.resolveClientIp(from("10.0.0.2").build())).isEqualTo("10.0.0.2");
+	}
+
+	@Test
+	void walksMultiLineForwardedForRightToLeft() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("X-Forwarded-For", "198.51.100.1, 203.0.113.7", " 10.0.0.5 ")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("203.0.113.7");
+	}
+
+	@Test
+	void ignoresHopsPrependedByClient() {
+		MockServerHttpRequest request = from("127.0.0.1")
+			.header("X-Forwarded-For", "8.8.8.8, 10.1.2.3, 203.0.113.7,10.0.0.5")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("203.0.113.7");
+	}
+
+	@Test
+	void returnsLeftmostHopWhenWholeChainIsTrusted() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("X-Forwarded-For", "10.0.0.7, 127.0.0.1", "10.0.0.5")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("10.0.0.7");
+	}
+
+	@Test
+	void readsQuotedBracketedIpv6FromForwarded() {
+		MockServerHttpRequest request = from("::1")
+			.header("Forwarded", "for=\"[2001:db8::1]:4711\";proto=https, for=10.0.0.5;by=10.0.0.1")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("2001:db8::1");
+	}
+
+	@Test
+	void stripsPortFromIpv4ForwardedHop() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("Forwarded", "proto=https;For=192.0.2.60:8080")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("192.0.2.60");
+	}
+
+	@Test
+	void prefersForwardedForOverForwardedAndRealIp() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("X-Forwarded-For", "203.0.113.7")
+			.header("Forwarded", "for=198.51.100.1")
+			.header("X-Real-IP", "192.0.2.1")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("203.0.113.7");
+	}
+
+	@Test
+	void fallsBackToRealIp() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("X-Real-IP", " 192.0.2.1 ")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("192.0.2.1");
+	}
+
+	@Test
+	void treatsUnparseableHopAsClient() {
+		MockServerHttpRequest request = from("10.0.0.2")
+			.header("X-Forwarded-For", "unknown, 10.0.0.5")
+			.build();
+
+		assertThat(filter.resolveClientIp(request)).isEqualTo("unknown");
+	}
+
+	private static MockServerHttpRequest.BaseBuilder<?> from(String peer) {
+		return MockServerHttpRequest.get("/api/v1/predictions")
+			.remoteAddress(new InetSocketAddress(peer, 40000));
+	}
+
+}
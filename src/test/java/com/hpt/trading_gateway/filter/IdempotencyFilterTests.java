@@ -0,0 +1,251 @@
+package com.hpt.trading_gateway.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hpt.trading_gateway.dto.UserData;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Deduplication, replay, body fingerprint and unresolved-outcome handling for IdempotencyFilter.
+ */
+class IdempotencyFilterTests {
+
+	private static final String BODY = "{\"strategy\":\"sma-cross\",\"symbol\":\"VNM\"}";
+
+	private final IdempotencyFilter factory = new IdempotencyFilter(
+		new ObjectMapper().findAndRegisterModules(), 100, 1024 * 1024);
+
+	private final GatewayFilter filter = filter();
+
+	private final AtomicInteger backendCalls = new AtomicInteger();
+
+	@Test
+	void replaysStoredResponseWithoutProxying() {
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+		MockServerWebExchange duplicate = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(1);
+		assertThat(duplicate.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(duplicate.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+		assertThat(duplicate.getResponse().getBodyAsString().block()).isEqualTo("{\"jobId\":1}");
+	}
+
+	@Test
+	void concurrentDuplicateAttachesToInFlightResult() {
+		Sinks.Empty<Void> upstream = Sinks.empty();
+		CompletableFuture<Void> owner = filter.filter(exchange("u-1", "k1", BODY),
+			held(upstream, HttpStatus.CREATED)).toFuture();
+
+		MockServerWebExchange duplicate = exchange("u-1", "k1", BODY);
+		CompletableFuture<Void> attached = filter.filter(duplicate, backend(HttpStatus.CREATED)).toFuture();
+		assertThat(attached).isNotDone();
+
+		upstream.tryEmitEmpty();
+		owner.join();
+		attached.join();
+
+		assertThat(backendCalls).hasValue(1);
+		assertThat(duplicate.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(duplicate.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+		assertThat(duplicate.getResponse().getBodyAsString().block()).isEqualTo("{\"jobId\":1}");
+	}
+
+	@Test
+	void concurrentDuplicateRetriesAsOwnerAfterServerError() {
+		Sinks.Empty<Void> upstream = Sinks.empty();
+		CompletableFuture<Void> owner = filter.filter(exchange("u-1", "k1", BODY),
+			held(upstream, HttpStatus.BAD_GATEWAY)).toFuture();
+
+		MockServerWebExchange duplicate = exchange("u-1", "k1", BODY);
+		CompletableFuture<Void> attached = filter.filter(duplicate, backend(HttpStatus.CREATED)).toFuture();
+		assertThat(attached).isNotDone();
+		assertThat(backendCalls).hasValue(0);
+
+		upstream.tryEmitEmpty();
+		owner.join();
+		attached.join();
+
+		// The owner's 502 is not stored, so the waiting duplicate is proxied as the new owner
+		assertThat(backendCalls).hasValue(2);
+		assertThat(duplicate.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(duplicate.getResponse().getHeaders().containsKey(IdempotencyFilter.REPLAYED_HEADER)).isFalse();
+
+		MockServerWebExchange later = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+		assertThat(backendCalls).hasValue(2);
+		assertThat(later.getResponse().getHeaders().getFirst(IdempotencyFilter.REPLAYED_HEADER)).isEqualTo("true");
+	}
+
+	@Test
+	void rejectsKeyReusedWithDifferentBody() {
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+		MockServerWebExchange duplicate = run(exchange("u-1", "k1", "{\"strategy\":\"rsi\"}"),
+			backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(1);
+		assertThat(duplicate.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+	}
+
+	@Test
+	void scopesKeysPerUser() {
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+		MockServerWebExchange otherUser = run(exchange("u-2", "k1", "{\"strategy\":\"rsi\"}"),
+			backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(2);
+		assertThat(otherUser.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(otherUser.getResponse().getHeaders().containsKey(IdempotencyFilter.REPLAYED_HEADER)).isFalse();
+	}
+
+	@Test
+	void doesNotDeduplicateAnonymousRequests() {
+		run(exchange(null, "k1", BODY), backend(HttpStatus.CREATED));
+		MockServerWebExchange second = run(exchange(null, "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(2);
+		assertThat(second.getResponse().getHeaders().containsKey(IdempotencyFilter.REPLAYED_HEADER)).isFalse();
+	}
+
+	@Test
+	void holdsKeyAfterGatewayTimeoutFallback() {
+		// Time limiter fired: the circuit breaker forwarded to /fallback/service, which answered 503
+		run(exchange("u-1", "k1", BODY), fallback(
+			new TimeoutException("Did not observe any item or terminal signal within 30000ms"),
+			HttpStatus.SERVICE_UNAVAILABLE));
+		MockServerWebExchange retry = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(1);
+		assertThat(retry.getResponse().getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+	}
+
+	@Test
+	void releasesKeyAfterRequestBodyLimitFallback() {
+		// BodySizeLimitFilter cut the body off; the fallback answered 413 without reaching the backend
+		run(exchange("u-1", "k1", BODY), fallback(
+			new IllegalStateException(new DataBufferLimitException("Body exceeded limit of 2097152 bytes")),
+			HttpStatus.PAYLOAD_TOO_LARGE));
+		MockServerWebExchange retry = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(2);
+		assertThat(retry.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+	}
+
+	@Test
+	void retriesAfterBackendServerError() {
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.BAD_GATEWAY));
+		MockServerWebExchange retry = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(2);
+		assertThat(retry.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+	}
+
+	@Test
+	void doesNotStoreTransientClientErrors() {
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.TOO_MANY_REQUESTS));
+		run(exchange("u-1", "k1", BODY), backend(HttpStatus.REQUEST_TIMEOUT));
+		MockServerWebExchange retry = run(exchange("u-1", "k1", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(3);
+		assertThat(retry.getResponse().getStatusCode()).isEqualTo(HttpStatus.CREATED);
+	}
+
+	@Test
+	void rejectsInvalidKey() {
+		MockServerWebExchange exchange = run(exchange("u-1", "bad key", BODY), backend(HttpStatus.CREATED));
+
+		assertThat(backendCalls).hasValue(0);
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	private MockServerWebExchange run(MockServerWebExchange exchange, GatewayFilterChain chain) {
+		StepVerifier.create(filter.filter(exchange, chain)).verifyComplete();
+		return exchange;
+	}
+
+	private GatewayFilter filter() {
+		IdempotencyFilter.Config config = new IdempotencyFilter.Config();
+		config.setTtl(Duration.ofMinutes(10));
+		config.setMaxBodySize(1024 * 1024);
+		return factory.apply(config);
+	}
+
+	/**
+	 * POST with the key, authenticated as userId by AuthenticationFilter (anonymous if null)
+	 */
+	private static MockServerWebExchange exchange(String userId, String key, String body) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/api/v1/backtest/run")
+			.header(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, key)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(body));
+		if (userId != null) {
+			UserData user = new UserData();
+			user.setId(userId);
+			exchange.getAttributes().put(ClientIdentityFilter.CLIENT_USER_ATTR, user);
+		}
+		return exchange;
+	}
+
+	/**
+	 * Stands in for the proxied backend: reads the request body, then answers with the status
+	 */
+	private GatewayFilterChain backend(HttpStatus status) {
+		return held(Sinks.empty(), status, true);
+	}
+
+	/**
+	 * Backend that only answers once upstream completes, keeping the owner in flight until then
+	 */
+	private GatewayFilterChain held(Sinks.Empty<Void> upstream, HttpStatus status) {
+		return held(upstream, status, false);
+	}
+
+	private GatewayFilterChain held(Sinks.Empty<Void> upstream, HttpStatus status, boolean immediate) {
+		return ex -> ex.getRequest().getBody()
+			.doOnNext(DataBufferUtils::release)
+			.then(Mono.defer(() -> {
+				backendCalls.incrementAndGet();
+				return immediate ? Mono.<Void>empty() : upstream.asMono();
+			}))
+			.then(Mono.defer(() -> respond(ex, status)));
+	}
+
+	/**
+	 * Circuit breaker forwarded to its fallbackUri after the backend call failed with error,
+	 * before the request body was read to completion
+	 */
+	private GatewayFilterChain fallback(Throwable error, HttpStatus status) {
+		return ex -> {
+			backendCalls.incrementAndGet();
+			ex.getAttributes().put(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR, error);
+			return respond(ex, status);
+		};
+	}
+
+	private static Mono<Void> respond(ServerWebExchange exchange, HttpStatus status) {
+		exchange.getResponse().setStatusCode(status);
+		exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		return exchange.getResponse().writeWith(Mono.just(DefaultDataBufferFactory.sharedInstance
+			.wrap("{\"jobId\":1}".getBytes(StandardCharsets.UTF_8))));
+	}
+
+}
@@ -0,0 +1,126 @@
+package com.hpt.trading_gateway.filter;
+
+import com.hpt.trading_gateway.filter.IdempotencyStore.Lookup;
+import com.hpt.trading_gateway.filter.IdempotencyStore.StoredResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Entry cap, byte budget and eviction rules of IdempotencyStore.
+ */
+class IdempotencyStoreTests {
+
+	private static final long NOW = 1_000_000L;
+
+	private static final long TTL = 600_000L;
+
+	@Test
+	void evictsLeastRecentlyUsedCompletedEntryAtEntryCap() {
+		IdempotencyStore store = new IdempotencyStore(2, 1024 * 1024);
+		complete(store, "a", 10);
+		complete(store, "b", 10);
+		// Touch a so that b becomes the least recently used
+		assertThat(store.acquire("a", NOW).owner()).isFalse();
+
+		assertThat(store.acquire("c", NOW).owner()).isTrue();
+
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.acquire("a", NOW).completed()).isNotNull();
+		assertThat(store.acquire("b", NOW).owner()).isTrue();
+	}
+
+	@Test
+	void neverEvictsInFlightEntries() {
+		IdempotencyStore store = new IdempotencyStore(2, 1024 * 1024);
+		Lookup a = store.acquire("a", NOW);
+		store.acquire("b", NOW);
+
+		assertThat(store.acquire("c", NOW)).isNull();
+
+		// Once one of them settles, its slot can be reclaimed
+		store.complete("a", a.entry(), response(10), "f", NOW + TTL);
+		assertThat(store.acquire("c", NOW).owner()).isTrue();
+		assertThat(store.acquire("b", NOW).owner()).isFalse();
+		assertThat(store.size()).isEqualTo(2);
+	}
+
+	@Test
+	void evictsCompletedEntriesOverByteBudget() {
+		// Each entry weighs key (1) + fingerprint (1) + body (40) = 42 bytes
+		IdempotencyStore store = new IdempotencyStore(100, 100);
+		complete(store, "a", 40);
+		complete(store, "b", 40);
+		assertThat(store.totalBytes()).isEqualTo(84);
+
+		complete(store, "c", 40);
+
+		assertThat(store.totalBytes()).isEqualTo(84);
+		assertThat(store.size()).isEqualTo(2);
+		assertThat(store.acquire("a", NOW).owner()).isTrue();
+	}
+
+	@Test
+	void doesNotStoreResponseLargerThanByteBudget() {
+		IdempotencyStore store = new IdempotencyStore(100, 100);
+		Lookup lookup = store.acquire("a", NOW);
+
+		store.complete("a", lookup.entry(), response(200), "f", NOW + TTL);
+
+		StepVerifier.create(lookup.entry().result()).verifyComplete();
+		assertThat(store.size()).isZero();
+		assertThat(store.totalBytes()).isZero();
+	}
+
+	@Test
+	void replacesExpiredEntry() {
+		IdempotencyStore store = new IdempotencyStore(100, 1024 * 1024);
+		complete(store, "a", 10);
+
+		assertThat(store.acquire("a", NOW + TTL - 1).owner()).isFalse();
+		assertThat(store.acquire("a", NOW + TTL + 1).owner()).isTrue();
+		assertThat(store.totalBytes()).isZero();
+	}
+
+	@Test
+	void holdsUnresolvedEntryUntilExpiry() {
+		IdempotencyStore store = new IdempotencyStore(100, 1024 * 1024);
+		Lookup owner = store.acquire("a", NOW);
+
+		store.markUnresolved("a", owner.entry(), "f", NOW + TTL);
+
+		StepVerifier.create(owner.entry().result()).verifyComplete();
+		Lookup duplicate = store.acquire("a", NOW + 1);
+		assertThat(duplicate.owner()).isFalse();
+		assertThat(duplicate.unresolved()).isTrue();
+		assertThat(duplicate.completed()).isNull();
+		assertThat(store.acquire("a", NOW + TTL + 1).owner()).isTrue();
+	}
+
+	@Test
+	void abandonReleasesWaitersAndFreesKey() {
+		IdempotencyStore store = new IdempotencyStore(100, 1024 * 1024);
+		Lookup owner = store.acquire("a", NOW);
+		Lookup waiter = store.acquire("a", NOW);
+		assertThat(waiter.owner()).isFalse();
+
+		store.abandon("a", owner.entry());
+
+		StepVerifier.create(waiter.entry().result()).verifyComplete();
+		assertThat(store.acquire("a", NOW).owner()).isTrue();
+	}
+
+	private static void complete(IdempotencyStore store, String key, int bodySize) {
+		Lookup lookup = store.acquire(key, NOW);
+		assertThat(lookup.owner()).isTrue();
+		store.complete(key, lookup.entry(), response(bodySize), "f", NOW + TTL);
+	}
+
+	private static StoredResponse response(int bodySize) {
+		return new StoredResponse(HttpStatus.OK, new HttpHeaders(), new byte[bodySize]);
+	}
+
+}
@@ -0,0 +1,192 @@
+package com.hpt.trading_gateway.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Encoding negotiation, the skip rules and a gzip round trip for ResponseCompressionFilter.
+ */
+class ResponseCompressionFilterTests {
+
+	private static final List<String> ENCODINGS = List.of("br", "zstd", "gzip");
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final ResponseCompressionFilter factory = new ResponseCompressionFilter(meterRegistry);
+
+	@Test
+	void negotiatePrefersServerOrderAmongAcceptedEncodings() {
+		assertThat(ResponseCompressionFilter.negotiate("gzip, br", ENCODINGS)).isEqualTo("br");
+		assertThat(ResponseCompressionFilter.negotiate("GZIP;q=0.5", ENCODINGS)).isEqualTo("gzip");
+		assertThat(ResponseCompressionFilter.negotiate("deflate", ENCODINGS)).isNull();
+		assertThat(ResponseCompressionFilter.negotiate("", ENCODINGS)).isNull();
+		assertThat(ResponseCompressionFilter.negotiate(null, ENCODINGS)).isNull();
+	}
+
+	@Test
+	void negotiateHonoursRefusalsAndWildcard() {
+		assertThat(ResponseCompressionFilter.negotiate("br;q=0, gzip", ENCODINGS)).isEqualTo("gzip");
+		assertThat(ResponseCompressionFilter.negotiate("*", ENCODINGS)).isEqualTo("br");
+		assertThat(ResponseCompressionFilter.negotiate("*, br;q=0, zstd;q=0.0", ENCODINGS)).isEqualTo("gzip");
+		assertThat(ResponseCompressionFilter.negotiate("*;q=0", ENCODINGS)).isNull();
+	}
+
+	@Test
+	void compressesLargeJsonWithGzip() {
+		byte[] body = json(8 * 1024);
+		MockServerWebExchange exchange = exchange();
+
+		StepVerifier.create(filter().filter(exchange, ex -> {
+				ex.getResponse().setStatusCode(HttpStatus.OK);
+				ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+				ex.getResponse().getHeaders().setContentLength(body.length);
+				ex.getResponse().getHeaders().setETag("\"news-v1\"");
+				return ex.getResponse().writeWith(Flux.just(wrap(body)));
+			}))
+			.verifyComplete();
+
+		HttpHeaders headers = exchange.getResponse().getHeaders();
+		assertThat(headers.getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		assertThat(headers.getETag()).isEqualTo("W/\"news-v1\"");
+		assertThat(headers.getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+		assertThat(headers.containsKey(HttpHeaders.CONTENT_LENGTH)).isFalse();
+
+		byte[] compressed = responseBytes(exchange);
+		assertThat(compressed.length).isLessThan(body.length);
+		assertThat(gunzip(compressed)).isEqualTo(body);
+		assertThat(meterRegistry.counter("gateway.compression.bytes.in",
+			"route", "unknown", "encoding", "gzip").count()).isEqualTo(body.length);
+	}
+
+	@Test
+	void compressesChunkedBodyOffTheEventLoop() {
+		byte[] body = json(256 * 1024);
+		MockServerWebExchange exchange = exchange();
+
+		StepVerifier.create(filter().filter(exchange, ex -> {
+				ex.getResponse().setStatusCode(HttpStatus.OK);
+				ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+				// No Content-Length: treated as large and offloaded, one chunk at a time
+				return ex.getResponse().writeWith(Flux.range(0, body.length / 4096)
+					.map(i -> wrap(Arrays.copyOfRange(body, i * 4096, (i + 1) * 4096))));
+			}))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		assertThat(gunzip(responseBytes(exchange))).isEqualTo(body);
+	}
+
+	@Test
+	void skipsAlreadyEncodedResponse() {
+		assertPassesThrough(headers -> headers.set(HttpHeaders.CONTENT_ENCODING, "br"));
+	}
+
+	@Test
+	void skipsNoTransformResponse() {
+		assertPassesThrough(headers -> headers.setCacheControl("private, no-transform"));
+	}
+
+	@Test
+	void skipsServerSentEvents() {
+		assertPassesThrough(headers -> headers.setContentType(MediaType.TEXT_EVENT_STREAM));
+	}
+
+	@Test
+	void skipsBodyBelowThreshold() {
+		assertPassesThrough(headers -> headers.setContentLength(512));
+	}
+
+	@Test
+	void skipsIncompressibleContentType() {
+		assertPassesThrough(headers -> headers.setContentType(MediaType.IMAGE_PNG));
+	}
+
+	/**
+	 * Writes a compressible 8KB JSON body after applying the customizer and expects it untouched
+	 */
+	private void assertPassesThrough(Consumer<HttpHeaders> customizer) {
+		byte[] body = json(8 * 1024);
+		MockServerWebExchange exchange = exchange();
+
+		StepVerifier.create(filter().filter(exchange, ex -> {
+				ex.getResponse().setStatusCode(HttpStatus.OK);
+				ex.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+				customizer.accept(ex.getResponse().getHeaders());
+				return ex.getResponse().writeWith(Flux.just(wrap(body)));
+			}))
+			.verifyComplete();
+
+		assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNotEqualTo("gzip");
+		assertThat(responseBytes(exchange)).isEqualTo(body);
+	}
+
+	private GatewayFilter filter() {
+		ResponseCompressionFilter.Config config = new ResponseCompressionFilter.Config();
+		config.setMinSize(1024);
+		config.setOffloadSize(64 * 1024);
+		config.setMimeTypes(List.of("application/json", "text/plain"));
+		config.setEncodings(List.of("gzip"));
+		return factory.apply(config);
+	}
+
+	private static MockServerWebExchange exchange() {
+		return MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/news")
+			.header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+	}
+
+	private static byte[] json(int size) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; json.length() < size - 64; i++) {
+			json.append("{\"symbol\":\"VNM\",\"price\":").append(60000 + i % 100).append("},");
+		}
+		json.setLength(json.length() - 1);
+		json.append(']');
+		while (json.length() < size) {
+			json.append(' ');
+		}
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static DataBuffer wrap(byte[] bytes) {
+		return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+	}
+
+	private static byte[] responseBytes(MockServerWebExchange exchange) {
+		DataBuffer joined = DataBufferUtils.join(exchange.getResponse().getBody()).block();
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		return bytes;
+	}
+
+	private static byte[] gunzip(byte[] compressed) {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return in.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}